@@ -29,8 +29,11 @@ import java.util.*;
  * super class's update method is to set the value variable to 
  * the number of neighbours. Properties can be set 
  * using the protected properties hashtable variable.<P>
+ * Once an Agent is put in an AgentGraph its links are held by the graph, 
+ * and the neighbours variable becomes a NeighbourView onto them, so it can 
+ * still be used as a normal Vector.<P>
  * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
- * @version 0.13
+ * @version 0.14
  */
 public class Agent {
     
@@ -42,10 +45,13 @@ public class Agent {
     protected int z = -1;			// Geographical z.
     protected String name = null;		// What it is. Easy to get string property or name.
     protected double value = 0;			// What its value is. Easy to get double property.
+    protected double previousValue = 0;         // Value at the end of the last iteration, in synchronous runs.
     protected Hashtable attributes = null;      // Holds more complex Agent attributes.
     protected int graphX = -1;			// Display X position for graph space.
     protected int graphY = -1;			// Display y position for graph space.
     protected int graphZ = -1;			// Display z position for graph space.    
+    protected AgentGraph graph = null;          // Compact store of network links, if any.
+    protected int id = -1;                      // Position in the graph, if any.
     
     
     /** 
@@ -95,12 +101,57 @@ public class Agent {
     
     
     
+    /**
+     * Puts the Agent in an AgentGraph with the given id.
+     * Called by AgentGraph, which has already taken a copy of the 
+     * Agent's neighbours. Passing in null takes the Agent out of its graph, 
+     * leaving it with an empty Vector of neighbours. Any name the old graph 
+     * would give the Agent is fixed first, so it doesn't change with the id.
+    **/
+    public void setGraph(AgentGraph graph, int id) {
+        getName();
+        this.graph = graph;
+        this.id = (graph == null) ? -1 : id;
+        neighbours = (graph == null) ? new Vector() : new NeighbourView(graph, id);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the AgentGraph holding the Agent's links.
+     * Returns null if it isn't in one.
+    **/
+    public AgentGraph getGraph() {
+        return graph;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the Agent's id in its AgentGraph.
+     * Returns -1 if it isn't in one.
+    **/
+    public int getId() {
+        return id;
+    }
+    
+    
+    
+    
+    
     /**
      * Runs one iteration of the Agent.
      * Alters the Agent's attributes.
      * Subclasses should override this method using getNeighbours 
      * if they are needed. Default test behaviour is to set the  
      * the value variable to the number of neighbours. 
+     * When the agents are run synchronously (see SmallWorldEngine.setSynchronous) 
+     * updates happen in parallel, and should only read other Agents' 
+     * getPreviousValue and only alter this Agent.
     **/   
     public void update() {
         value = neighbours.size();
@@ -110,6 +161,21 @@ public class Agent {
     
     
     
+    /**
+     * Runs one iteration of the Agent, with a source of random numbers.
+     * This is what SmallWorldEngine calls. Subclasses that need random numbers 
+     * should override this rather than update(), and use only the random 
+     * numbers given, so runs can be repeated with SmallWorldEngine.setSeed. 
+     * The default just calls update().
+    **/   
+    public void update(SplittableRandom random) {
+        update();
+    }
+    
+    
+    
+    
+    
     /**
      * Sets geographical x.
      * The default value is -1.
@@ -278,6 +344,32 @@ public class Agent {
     
     
     
+    /**
+     * Gets the value at the end of the last iteration.
+     * Only kept up to date when the agents are run synchronously, when 
+     * it's what update methods should read from neighbours, as their 
+     * value may already have been updated for this iteration.
+    **/   
+    public double getPreviousValue() {
+	return previousValue;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Copies the value to the previous value.
+     * Called on all the agents before each synchronous iteration.
+    **/   
+    public void storeValue() {
+	previousValue = value;
+    }
+    
+    
+    
+    
+    
     /**
      * Sets the name.
      * The default value is null.
@@ -292,9 +384,11 @@ public class Agent {
     
     /**
      * Gets the name.
-     * Returns null if not set.
+     * If not set, the Agent's graph is asked for one (see AgentGraph.getAgentName), 
+     * which is then kept. Returns null if there isn't one.
     **/   
     public String getName() {
+	if ((name == null) && (graph != null)) name = graph.getAgentName(id);
 	return name;
     }
     
@@ -0,0 +1,533 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * Opens agent files that may be compressed, with the compressing or 
+ * decompressing done on a thread of its own.<P>
+ * Agent files repeat the same tags on every line, so they compress very 
+ * well. Files are recognised as gzip by their first bytes when read, 
+ * whatever they are called, and written as gzip if their name ends with 
+ * GZIP_EXTENSION. Files starting with the zstd magic number are recognised 
+ * too, but as Java has no zstd built in they give an IOException saying so, 
+ * rather than being read as garbage.<P>
+ * Gzip is done by the java.util.zip classes, at the fastest level when 
+ * writing, on a separate thread: when reading, a thread inflates the file 
+ * into blocks which the reader takes from a short queue, so the parsing and 
+ * the inflating go on at the same time; when writing, the blocks written 
+ * are queued and deflated by the thread. Either way an IOException on the thread comes out of the next 
+ * read, write or close.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class AgentCompression {
+    
+    public static final String GZIP_EXTENSION = ".gz";     // File ending for gzipped files.
+    
+    private static final int BLOCK = 1 << 18;          // Bytes passed between threads at a time.
+    private static final int QUEUED = 4;                // Blocks that can be waiting.
+    private static final byte [] END = new byte[0];     // Queued to mark the end of the data.
+    
+    
+    /** 
+     * Not made; all the methods are static.
+    **/
+    private AgentCompression() {
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a file starts with the gzip magic number.
+    **/
+    public static boolean isGzip(File file) throws IOException {
+        byte [] start = start(file, 2);
+        return (start.length == 2) && ((start[0] & 0xff) == 0x1f) && ((start[1] & 0xff) == 0x8b);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a file starts with the zstd magic number.
+    **/
+    public static boolean isZstd(File file) throws IOException {
+        byte [] start = start(file, 4);
+        return (start.length == 4) && ((start[0] & 0xff) == 0x28) && ((start[1] & 0xff) == 0xb5) && 
+            ((start[2] & 0xff) == 0x2f) && ((start[3] & 0xff) == 0xfd);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a file is compressed in a way recognised here.
+    **/
+    public static boolean isCompressed(File file) throws IOException {
+        return isGzip(file) || isZstd(file);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets a file's name without GZIP_EXTENSION, if it has it, 
+     * so the format of what's inside can be told from the rest.
+    **/
+    public static String innerName(File file) {
+        String name = file.getName();
+        if (name.toLowerCase().endsWith(GZIP_EXTENSION)) name = name.substring(0, name.length() - GZIP_EXTENSION.length());
+        return name;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Opens a file to read, decompressing it on another thread if it's 
+     * gzipped. Throws an IOException if it's zstd compressed.
+    **/
+    public static InputStream openInput(File file) throws IOException {
+        
+        if (isZstd(file)) {
+            throw new IOException(file.getName() + " is zstd compressed, which can't be read; " + 
+                "decompress it (zstd -d) or recompress it with gzip first");
+        }
+        
+        if (isGzip(file) == false) return new BufferedInputStream(new FileInputStream(file), BLOCK);
+        
+        return new InflatingInput(new GZIPInputStream(new FileInputStream(file), BLOCK));
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Opens a file to write, replacing anything in it, compressing what's 
+     * written on another thread if its name ends with GZIP_EXTENSION.
+    **/
+    public static OutputStream openOutput(File file) throws IOException {
+        
+        if (file.getName().toLowerCase().endsWith(GZIP_EXTENSION) == false) {
+            return new BufferedOutputStream(new FileOutputStream(file), BLOCK);
+        }
+        
+        return new DeflatingOutput(new FastGZIPOutputStream(new FileOutputStream(file)));
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the first few bytes of a file. Gives back fewer if the file is shorter.
+    **/
+    private static byte [] start(File file, int length) throws IOException {
+        
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        
+        try {
+            byte [] start = new byte[(int)Math.min(length, file.length())];
+            in.readFully(start);
+            return start;
+        } finally {
+            in.close();
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * An InputStream that gives back the bytes read from another 
+     * by a thread of its own, a block at a time.
+    **/
+    private static class InflatingInput extends InputStream implements Runnable {
+        
+        private InputStream in = null;              // Stream being read on the thread.
+        private BlockingQueue queue = new ArrayBlockingQueue(QUEUED);   // Blocks read, ending with END.
+        private Thread thread = null;               // Thread reading in.
+        private volatile IOException failure = null;    // Problem on the thread, if any.
+        private volatile boolean closed = false;    // Set to stop the thread.
+        private byte [] block = null;               // Block being given back.
+        private int position = 0;                   // Next byte of block.
+        private int length = 0;                     // Used part of block.
+        private boolean ended = false;              // True once END is reached.
+        
+        
+        /**
+         * Starts reading in on a new thread.
+        **/
+        InflatingInput(InputStream in) {
+            this.in = in;
+            thread = new Thread(this, "Agent file decompression");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        
+        
+        
+        
+        /**
+         * Reads blocks in and queues them, until the end, a problem, or closing.
+        **/
+        public void run() {
+            
+            try {
+                
+                while (closed == false) {
+                    
+                    byte [] read = new byte[BLOCK];
+                    int filled = 0;
+                    
+                    while (filled < BLOCK) {
+                        int count = in.read(read, filled, BLOCK - filled);
+                        if (count < 0) break;
+                        filled = filled + count;
+                    }
+                    
+                    if (filled > 0) queue.put(new Block(read, filled));
+                    if (filled < BLOCK) break;
+                    
+                }
+                
+            } catch (IOException ioe) {
+                failure = ioe;
+            } catch (InterruptedException ie) {
+                // Closed while waiting.
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException ioe) {
+                    if (failure == null) failure = ioe;
+                }
+                while (closed == false) {
+                    try {
+                        queue.put(END);
+                        break;
+                    } catch (InterruptedException ie) {
+                        // Try again, unless closed.
+                    }
+                }
+            }
+            
+        } // End of run.
+        
+        
+        
+        
+        
+        /**
+         * Moves on to the next block if this one's used up. 
+         * Returns false at the end of the data.
+        **/
+        private boolean fill() throws IOException {
+            
+            while ((ended == false) && (position == length)) {
+                
+                Object next = null;
+                
+                try {
+                    next = queue.take();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted reading compressed file");
+                }
+                
+                if (next == END) {
+                    ended = true;
+                    if (failure != null) throw failure;
+                } else {
+                    block = ((Block)next).bytes;
+                    length = ((Block)next).length;
+                    position = 0;
+                }
+                
+            }
+            return position < length;
+            
+        }
+        
+        
+        
+        
+        
+        /**
+         * Reads a byte.
+        **/
+        public int read() throws IOException {
+            if (fill() == false) return -1;
+            return block[position++] & 0xff;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Reads bytes into part of an array.
+        **/
+        public int read(byte [] into, int offset, int count) throws IOException {
+            
+            if (count == 0) return 0;
+            if (fill() == false) return -1;
+            
+            int copied = Math.min(count, length - position);
+            System.arraycopy(block, position, into, offset, copied);
+            position = position + copied;
+            return copied;
+            
+        }
+        
+        
+        
+        
+        
+        /**
+         * Stops the thread and closes the stream it reads.
+        **/
+        public void close() throws IOException {
+            closed = true;
+            thread.interrupt();
+            queue.clear();
+        }
+    
+    // End of class.
+    }
+    
+    
+    
+    
+    
+    /**
+     * An OutputStream that collects what's written into blocks, 
+     * which a thread of its own writes to another stream.
+    **/
+    private static class DeflatingOutput extends OutputStream implements Runnable {
+        
+        private OutputStream out = null;            // Stream written on the thread.
+        private BlockingQueue queue = new ArrayBlockingQueue(QUEUED);   // Blocks to write, ending with END.
+        private Thread thread = null;               // Thread writing out.
+        private volatile IOException failure = null;    // Problem on the thread, if any.
+        private byte [] block = new byte[BLOCK];    // Block being filled.
+        private int length = 0;                     // Used part of block.
+        private boolean closed = false;             // True once closed.
+        
+        
+        /**
+         * Starts writing out on a new thread.
+        **/
+        DeflatingOutput(OutputStream out) {
+            this.out = out;
+            thread = new Thread(this, "Agent file compression");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        
+        
+        
+        
+        
+        /**
+         * Writes blocks out as they're queued, until END. After a problem, 
+         * blocks are still taken, but dropped, so writers don't wait for ever.
+        **/
+        public void run() {
+            
+            try {
+                while (true) {
+                    Object next = queue.take();
+                    if (next == END) break;
+                    if (failure == null) {
+                        try {
+                            out.write(((Block)next).bytes, 0, ((Block)next).length);
+                        } catch (IOException ioe) {
+                            failure = ioe;
+                        }
+                    }
+                }
+            } catch (InterruptedException ie) {
+                // Given up on.
+            }
+            
+        } // End of run.
+        
+        
+        
+        
+        
+        /**
+         * Writes a byte.
+        **/
+        public void write(int b) throws IOException {
+            if (length == BLOCK) flushBlock();
+            block[length++] = (byte)b;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Writes part of an array.
+        **/
+        public void write(byte [] from, int offset, int count) throws IOException {
+            
+            while (count > 0) {
+                if (length == BLOCK) flushBlock();
+                int copied = Math.min(count, BLOCK - length);
+                System.arraycopy(from, offset, block, length, copied);
+                length = length + copied;
+                offset = offset + copied;
+                count = count - copied;
+            }
+            
+        }
+        
+        
+        
+        
+        
+        /**
+         * Queues the block being filled, and starts a new one.
+        **/
+        private void flushBlock() throws IOException {
+            
+            if (failure != null) throw failure;
+            if (length == 0) return;
+            put(new Block(block, length));
+            block = new byte[BLOCK];
+            length = 0;
+            
+        }
+        
+        
+        
+        
+        
+        /**
+         * Queues a block for the thread.
+        **/
+        private void put(Object next) throws IOException {
+            try {
+                queue.put(next);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted writing compressed file");
+            }
+        }
+        
+        
+        
+        
+        
+        /**
+         * Writes out what's left, waits for the thread to finish, and 
+         * closes the stream it writes, finishing the compressed data.
+        **/
+        public void close() throws IOException {
+            
+            if (closed) return;
+            closed = true;
+            
+            try {
+                flushBlock();
+            } finally {
+                put(END);
+                try {
+                    thread.join();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted writing compressed file");
+                } finally {
+                    out.close();
+                }
+            }
+            if (failure != null) throw failure;
+            
+        } // End of close.
+    
+    // End of class.
+    }
+    
+    
+    
+    
+    
+    /**
+     * A GZIPOutputStream using the fastest compression level. The tags 
+     * repeated on every line are found just as well, and it deflates 
+     * several times faster than the default level.
+    **/
+    private static class FastGZIPOutputStream extends GZIPOutputStream {
+        
+        
+        /**
+         * Creates a stream writing to another.
+        **/
+        FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, BLOCK);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+        
+    // End of class.
+    }
+    
+    
+    
+    
+    
+    /**
+     * A block of bytes passed between threads, and how much of it is used.
+    **/
+    private static class Block {
+        
+        private byte [] bytes = null;       // The bytes.
+        private int length = 0;             // Used part of bytes.
+        
+        
+        /**
+         * Creates a block.
+        **/
+        Block(byte [] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    
+    // End of class.
+    }
+
+
+// End of class.
+}
@@ -0,0 +1,507 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Builds large starting worlds of agents straight into an AgentGraph.<P>
+ * Three layouts are made:
+ * <UL>
+ * <LI>RING : each agent linked to the degree / 2 agents either side of it 
+ * round a ring; the classic Watts start, which with degree 2 is a plain ring.</LI>
+ * <LI>LATTICE : agents on a square grid, filled row by row, linked to the 
+ * agents above, below and either side, or also diagonally if degree is 8 or more.</LI>
+ * <LI>GEOMETRIC : agents at random geographical positions, linked to all the 
+ * others within a distance picked to give degree neighbours on average.</LI>
+ * </UL>
+ * Rather than building neighbour Vectors and then copying them into a graph, 
+ * each agent's number of links is worked out first, and then the links are 
+ * written straight into CSR rows, so the agents can be made and linked in 
+ * parallel over ranges of ids. Agents are handed out in fixed blocks, each with 
+ * its own random number stream, so the world made doesn't depend on the threads.<P>
+ * Names aren't made for each agent; the graph is given the prefix "Agent-", 
+ * and an agent's name is only made from it and the agent's id when asked for.<P>
+ * Geographical positions are random within the width and height given, except 
+ * for GEOMETRIC worlds, where they are the positions used for linking. Graph 
+ * space positions are round a circle for RING, on the grid for LATTICE, and 
+ * the geographical positions scaled to fit the graph radius for GEOMETRIC. 
+ * GEOMETRIC agents are given ids cell by cell across a grid, so agents near 
+ * each other geographically are near each other in memory too.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class AgentGenerator {
+    
+    public static final int RING = 0;                   // Ring lattice layout.
+    public static final int LATTICE = 1;                // Square grid layout.
+    public static final int GEOMETRIC = 2;              // Random geometric layout.
+    public static final String NAME_PREFIX = "Agent-";  // Start of each agent's name.
+    
+    private static final int BLOCK = 4096;             // Agents per random number stream; smallest range run.
+    private static final int POSITIONS = 0;             // Pass picking GEOMETRIC positions.
+    private static final int AGENTS = 1;                // Pass making agents.
+    private static final int COUNT = 2;                 // Pass counting each agent's links.
+    private static final int LINK = 3;                  // Pass writing each agent's links.
+    
+    private int numberOfAgents = 10;        // Number of agents to make.
+    private int topology = RING;            // Layout to make.
+    private int degree = 2;                 // Links per agent wanted.
+    private int width = 300;                // Width of the geographical area.
+    private int height = 400;               // Height of the geographical area.
+    private int radius = 140;               // Radius for graph display.
+    private int parallelism = Runtime.getRuntime().availableProcessors();  // Threads to use.
+    private SplittableRandom random = null; // Source of the random numbers.
+    
+    // Worked on while generating.
+    
+    private Agent [] agents = null;         // Agents by id.
+    private int [] rowStarts = null;        // Where each agent's links start; one more than the agents.
+    private int [] targets = null;          // Links, agent by agent.
+    private SplittableRandom [] streams = null;     // Random number stream for each block of agents.
+    private double [] xs = null;            // Exact geographical positions for GEOMETRIC.
+    private double [] ys = null;
+    private double distance = 0;            // Linking distance for GEOMETRIC.
+    private double cellSize = 1;            // Size of the grid cells used to find agents within the distance.
+    private int columns = 1;                // Cells, or grid squares for LATTICE, across.
+    private int rows = 1;                   // Cells, or grid squares for LATTICE, down.
+    private int [] cellStarts = null;       // First agent id in each cell; one more than the cells.
+    
+    
+    /** 
+     * Creates a generator for the given number of agents, using 
+     * the given random numbers. The default is a ring with degree 2.
+    **/
+    public AgentGenerator(int numberOfAgents, SplittableRandom random) {
+        if (numberOfAgents < 0) throw new IllegalArgumentException("Number of agents can't be negative");
+        this.numberOfAgents = numberOfAgents;
+        this.random = random;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the layout to make: RING, LATTICE or GEOMETRIC.
+    **/
+    public void setTopology(int topology) {
+        if ((topology < RING) || (topology > GEOMETRIC)) throw new IllegalArgumentException("Unknown topology " + topology);
+        this.topology = topology;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the number of links wanted per agent. For a RING this is 
+     * rounded down to an even number; for a LATTICE, 8 or more 
+     * gives diagonal links; for GEOMETRIC, it's an average.
+    **/
+    public void setDegree(int degree) {
+        if (degree < 0) throw new IllegalArgumentException("Degree can't be negative");
+        this.degree = degree;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the size of the geographical area.
+    **/
+    public void setArea(int width, int height) {
+        if ((width < 1) || (height < 1)) throw new IllegalArgumentException("Area must be at least 1 by 1");
+        this.width = width;
+        this.height = height;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the radius used for the graph space positions.
+    **/
+    public void setGraphRadius(int radius) {
+        this.radius = radius;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the number of threads to use.
+    **/
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Makes the agents and links them, giving back their graph.
+     * The agents are in id order in the graph, and their names are 
+     * NAME_PREFIX followed by their id.
+    **/
+    public AgentGraph generate() {
+        
+        int size = numberOfAgents;
+        agents = new Agent[size];
+        rowStarts = new int[size + 1];
+        
+        // Split off the random number streams in order, so each block 
+        // gets the same numbers whichever thread runs it.
+        
+        streams = new SplittableRandom[(size + BLOCK - 1) / BLOCK];
+        for (int i = 0; i < streams.length; i++) streams[i] = random.split();
+        
+        if (topology == GEOMETRIC) {
+            xs = new double[size];
+            ys = new double[size];
+            distance = Math.sqrt((double)degree * width * height / (Math.PI * Math.max(size, 1)));
+        } else if (topology == LATTICE) {
+            columns = Math.max((int)Math.ceil(Math.sqrt(size)), 1);
+            rows = Math.max((size + columns - 1) / columns, 1);
+        }
+        
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        
+        try {
+            
+            if (topology == GEOMETRIC) {
+                pool.invoke(new Pass(this, POSITIONS, 0, size));
+                makeCells();
+            }
+            pool.invoke(new Pass(this, AGENTS, 0, size));
+            
+            // Count the links, turn the counts into row starts, then write the links in.
+            
+            pool.invoke(new Pass(this, COUNT, 0, size));
+            
+            long total = 0;
+            for (int i = 0; i < size; i++) {
+                total = total + rowStarts[i + 1];
+                if (total > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too many links for one AgentGraph");
+                rowStarts[i + 1] = (int)total;
+            }
+            targets = new int[Math.max((int)total, 16)];
+            
+            pool.invoke(new Pass(this, LINK, 0, size));
+            
+        } finally {
+            pool.shutdown();
+        }
+        
+        AgentGraph graph = new AgentGraph(agents, rowStarts, targets);
+        graph.setNamePrefix(NAME_PREFIX);
+        
+        // Let the working arrays go; the graph keeps what it needs.
+        
+        agents = null;
+        rowStarts = null;
+        targets = null;
+        streams = null;
+        xs = null;
+        ys = null;
+        cellStarts = null;
+        
+        return graph;
+        
+    } // End of generate.
+    
+    
+    
+    
+    
+    /**
+     * Runs one pass over agents start to end - 1, which must be a whole 
+     * number of blocks, or run to the last agent.
+    **/
+    private void runBlock(int pass, int start, int end) {
+        
+        SplittableRandom blockRandom = streams[start / BLOCK];
+        
+        for (int i = start; i < end; i++) {
+            if (pass == POSITIONS) {
+                xs[i] = blockRandom.nextDouble() * width;
+                ys[i] = blockRandom.nextDouble() * height;
+            } else if (pass == AGENTS) {
+                makeAgent(i, blockRandom);
+            } else if (pass == COUNT) {
+                rowStarts[i + 1] = link(i, null, 0);
+            } else {
+                link(i, targets, rowStarts[i]);
+            }
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Makes an agent and gives it its geographical and graph space positions.
+    **/
+    private void makeAgent(int i, SplittableRandom blockRandom) {
+        
+        Agent agent = new Agent();
+        
+        if (topology == GEOMETRIC) {
+            agent.setX((int)xs[i]);
+            agent.setY((int)ys[i]);
+            agent.setGraphX((int)((xs[i] / width) * 2 * radius) - radius);
+            agent.setGraphY((int)((ys[i] / height) * 2 * radius) - radius);
+        } else {
+            agent.setX(blockRandom.nextInt(width));
+            agent.setY(blockRandom.nextInt(height));
+            if (topology == RING) {
+                double positionAngle = (2.0 * Math.PI * i) / numberOfAgents;
+                agent.setGraphX((int)(radius * Math.sin(positionAngle)));
+                agent.setGraphY((int)(radius * Math.cos(positionAngle)));
+            } else {
+                agent.setGraphX(gridPosition(i % columns, columns));
+                agent.setGraphY(gridPosition(i / columns, rows));
+            }
+        }
+        
+        agents[i] = agent;
+        
+    } // End of makeAgent.
+    
+    
+    
+    
+    
+    /**
+     * Works out an agent's links, writing them into row from offset if 
+     * row isn't null. Returns the number of links.
+    **/
+    private int link(int i, int [] row, int offset) {
+        
+        int count = 0;
+        int size = numberOfAgents;
+        
+        if (topology == RING) {
+            
+            // Up to degree / 2 each side, but no agent twice if the ring is small.
+            
+            int half = Math.min(degree / 2, size / 2);
+            int behind = (2 * half >= size) ? size - 1 - half : half;
+            
+            for (int d = behind; d > 0; d--) {
+                if (row != null) row[offset + count] = (i - d + size) % size;
+                count++;
+            }
+            for (int d = 1; d <= half; d++) {
+                if (row != null) row[offset + count] = (i + d) % size;
+                count++;
+            }
+            
+        } else if (topology == LATTICE) {
+            
+            int column = i % columns;
+            int gridRow = i / columns;
+            int reach = (degree >= 8) ? 1 : 0;
+            
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if (((dx == 0) && (dy == 0)) || ((dx != 0) && (dy != 0) && (reach == 0))) continue;
+                    int c = column + dx;
+                    int r = gridRow + dy;
+                    int other = r * columns + c;
+                    if ((c < 0) || (c >= columns) || (r < 0) || (other >= size)) continue;
+                    if (row != null) row[offset + count] = other;
+                    count++;
+                }
+            }
+            
+        } else {
+            
+            // Look through the cells around the agent's for ones close enough.
+            
+            double squared = distance * distance;
+            int column = cellColumn(xs[i]);
+            int cellRow = cellRow(ys[i]);
+            
+            for (int r = Math.max(cellRow - 1, 0); r <= Math.min(cellRow + 1, rows - 1); r++) {
+                for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, columns - 1); c++) {
+                    int cell = r * columns + c;
+                    for (int other = cellStarts[cell]; other < cellStarts[cell + 1]; other++) {
+                        if (other == i) continue;
+                        double dx = xs[other] - xs[i];
+                        double dy = ys[other] - ys[i];
+                        if (dx * dx + dy * dy < squared) {
+                            if (row != null) row[offset + count] = other;
+                            count++;
+                        }
+                    }
+                }
+            }
+            
+        }
+        
+        return count;
+        
+    } // End of link.
+    
+    
+    
+    
+    
+    /**
+     * Sorts the GEOMETRIC positions into a grid of cells at least the linking 
+     * distance wide, so only the neighbouring cells need searching. The 
+     * positions are put in cell order, which sets the ids of the agents.
+    **/
+    private void makeCells() {
+        
+        int size = numberOfAgents;
+        
+        // Keep the grid to around one cell per agent at most.
+        
+        cellSize = Math.max(distance, Math.sqrt((double)width * height / Math.max(size, 1)));
+        columns = (int)Math.min(Math.max(Math.ceil(width / cellSize), 1), 1 << 15);
+        rows = (int)Math.min(Math.max(Math.ceil(height / cellSize), 1), 1 << 15);
+        cellSize = Math.max(cellSize, Math.max((double)width / columns, (double)height / rows));
+        
+        cellStarts = new int[columns * rows + 1];
+        
+        for (int i = 0; i < size; i++) cellStarts[cell(i) + 1]++;
+        for (int c = 0; c < columns * rows; c++) cellStarts[c + 1] = cellStarts[c + 1] + cellStarts[c];
+        
+        int [] filled = Arrays.copyOf(cellStarts, columns * rows);
+        double [] sortedXs = new double[size];
+        double [] sortedYs = new double[size];
+        
+        for (int i = 0; i < size; i++) {
+            int position = filled[cell(i)]++;
+            sortedXs[position] = xs[i];
+            sortedYs[position] = ys[i];
+        }
+        
+        xs = sortedXs;
+        ys = sortedYs;
+        
+    } // End of makeCells.
+    
+    
+    
+    
+    
+    /**
+     * Finds the cell a GEOMETRIC agent is in.
+    **/
+    private int cell(int i) {
+        return cellRow(ys[i]) * columns + cellColumn(xs[i]);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Finds the cell column for a geographical x.
+    **/
+    private int cellColumn(double x) {
+        return Math.min((int)(x / cellSize), columns - 1);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Finds the cell row for a geographical y.
+    **/
+    private int cellRow(double y) {
+        return Math.min((int)(y / cellSize), rows - 1);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Spreads grid squares across the graph space, from -radius to radius.
+    **/
+    private int gridPosition(int square, int squares) {
+        if (squares < 2) return 0;
+        return (int)(((long)square * 2 * radius) / (squares - 1)) - radius;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Runs a pass over a range of agents, splitting itself up 
+     * on block boundaries to run on a ForkJoinPool.
+    **/
+    private static class Pass extends RecursiveAction {
+        
+        private AgentGenerator generator = null;    // Generator doing the work.
+        private int pass = POSITIONS;               // Which pass to run.
+        private int start = 0;                      // First agent id to do.
+        private int end = 0;                        // One past the last agent id to do.
+        
+        
+        /**
+         * Creates a pass over agents start to end - 1.
+        **/
+        Pass(AgentGenerator generator, int pass, int start, int end) {
+            this.generator = generator;
+            this.pass = pass;
+            this.start = start;
+            this.end = end;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Splits the range in two, on a block boundary, until it's one block, 
+         * then runs through it.
+        **/
+        protected void compute() {
+            
+            if (end - start > BLOCK) {
+                int blocks = (end - start + BLOCK - 1) / BLOCK;
+                int middle = start + (blocks / 2) * BLOCK;
+                invokeAll(new Pass(generator, pass, start, middle), new Pass(generator, pass, middle, end));
+                return;
+            }
+            
+            if (end > start) generator.runBlock(pass, start, end);
+            
+        }
+    
+    // End of class.
+    }
+
+
+// End of class.
+}
@@ -0,0 +1,670 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+
+/**
+ * A compact store for the network links between a set of agents.<P>
+ * Each agent is given an id, its position in the graph, and its neighbours 
+ * are held as a row of int ids in one shared array, in the style of a 
+ * compressed sparse row (CSR) matrix. This takes four bytes per link, rather 
+ * than a Vector of object references per agent, and lets code that knows 
+ * about the graph run through neighbours without making any objects (see 
+ * getTargets, getOffset and getDegree).<P>
+ * Rows are given some spare room so links can be added as the network is 
+ * rewired. A row that fills up is moved to the end of the array with twice 
+ * the room; compact squeezes out the spare room and the gaps left behind.<P>
+ * Agents in a graph have a NeighbourView as their neighbours Vector, so 
+ * Agent.getNeighbours, addNeighbour and removeNeighbour, and subclasses 
+ * using the neighbours variable, all work on the graph. Like the rest of 
+ * the model, the graph isn't synchronized.<P>
+ * A graph can also be given a name prefix, so agents made in bulk don't each 
+ * need a name String; an agent without a name is given the prefix followed 
+ * by its id when its name is first asked for (see getAgentName).<P>
+ * Changes to the links can be recorded, as a list of ints, so they can be 
+ * saved and made again without looking at the whole graph, along with the 
+ * ids of agents whose values have been marked as changed; CheckpointJournal 
+ * uses this (see setRecordingChanges, takeChanges, applyChanges, 
+ * valuesChanged and takeChangedValues).<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class AgentGraph {
+    
+    private Agent [] agents = null;         // Agents by id.
+    private int [] offsets = null;          // Where each agent's row starts in targets.
+    private int [] capacities = null;       // Room in each agent's row.
+    private int [] degrees = null;          // Number of neighbours in each agent's row.
+    private int [] targets = null;          // Neighbour ids for all the rows.
+    private int used = 0;                   // End of the used part of targets.
+    private int wasted = 0;                 // Slots in targets left behind by moved rows.
+    private long arcs = 0;                  // Number of one-way links.
+    private int modCount = 0;               // Changes made, so users can tell if they need to refresh.
+    private String namePrefix = null;       // Start of the names of agents without one, if any.
+    private int [] changes = null;          // Changes recorded, four ints each, if recording.
+    private int changeCount = 0;            // Used part of changes.
+    private int [] changedValues = null;    // Ids of agents whose values changed, if recording.
+    private int changedValueCount = 0;      // Used part of changedValues.
+    
+    public static final int ADD = 0;        // Change adding an arc to the end of a row: ADD, a, 0, b.
+    public static final int INSERT = 1;     // Change inserting an arc: INSERT, a, index, b.
+    public static final int SET = 2;        // Change replacing an arc: SET, a, index, b.
+    public static final int REMOVE = 3;     // Change removing an arc: REMOVE, a, index, 0.
+    public static final int CLEAR = 4;      // Change removing all a row's arcs: CLEAR, a, 0, 0.
+    
+    
+    /** 
+     * Creates a graph from a Vector of agents and their current neighbours.
+     * The agents are given ids in the order of the Vector, and from then on their 
+     * neighbours are held by the graph. Neighbours that aren't in the Vector are dropped.
+    **/
+    public AgentGraph(Vector agentVector) {
+        
+        int size = agentVector.size();
+        agents = new Agent[size];
+        offsets = new int[size];
+        capacities = new int[size];
+        degrees = new int[size];
+        
+        IdentityHashMap ids = new IdentityHashMap(size * 2);
+        
+        for (int i = 0; i < size; i++) {
+            agents[i] = (Agent)agentVector.elementAt(i);
+            ids.put(agents[i], Integer.valueOf(i));
+        }
+        
+        // Size the rows to fit the current neighbours exactly.
+        
+        int total = 0;
+        
+        for (int i = 0; i < size; i++) {
+            offsets[i] = total;
+            capacities[i] = agents[i].getNeighbours().size();
+            total = total + capacities[i];
+        }
+        
+        targets = new int[Math.max(total, 16)];
+        used = total;
+        
+        // Copy the neighbours in before attaching the agents, as attaching 
+        // replaces their neighbour Vectors.
+        
+        for (int i = 0; i < size; i++) {
+            
+            Vector neighbours = agents[i].getNeighbours();
+            
+            for (int j = 0; j < neighbours.size(); j++) {
+                Integer id = (Integer)ids.get(neighbours.elementAt(j));
+                if (id != null) targets[offsets[i] + degrees[i]++] = id.intValue();
+            }
+            arcs = arcs + degrees[i];
+        }
+        
+        for (int i = 0; i < size; i++) agents[i].setGraph(this, i);
+        
+    } // End of constructor.
+    
+    
+    
+    
+    
+    /** 
+     * Creates a graph for an array of agents with no links yet.
+     * Each row is given room for expectedDegree neighbours to start with. 
+     * Throws an IllegalStateException if that's more room than one int array holds.
+    **/
+    public AgentGraph(Agent [] agents, int expectedDegree) {
+        
+        int size = agents.length;
+        long total = (long)size * expectedDegree;
+        if (total > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too many links for one AgentGraph");
+        
+        this.agents = agents;
+        offsets = new int[size];
+        capacities = new int[size];
+        degrees = new int[size];
+        targets = new int[Math.max((int)total, 16)];
+        
+        for (int i = 0; i < size; i++) {
+            offsets[i] = used;
+            capacities[i] = expectedDegree;
+            used = used + expectedDegree;
+        }
+        
+        for (int i = 0; i < size; i++) agents[i].setGraph(this, i);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Creates a graph from links already laid out as CSR rows, for example
+     * when loaded by AgentSnapshot. Agent i's neighbours are targets[rowStarts[i]]
+     * to targets[rowStarts[i + 1] - 1], so rowStarts has one more entry than
+     * there are agents. The arrays are kept, not copied, and the rows have
+     * no spare room until they are added to.
+    **/
+    public AgentGraph(Agent [] agents, int [] rowStarts, int [] targets) {
+        
+        int size = agents.length;
+        this.agents = agents;
+        this.targets = targets;
+        offsets = new int[size];
+        capacities = new int[size];
+        degrees = new int[size];
+        
+        for (int i = 0; i < size; i++) {
+            offsets[i] = rowStarts[i];
+            degrees[i] = rowStarts[i + 1] - rowStarts[i];
+            capacities[i] = degrees[i];
+        }
+        
+        used = rowStarts[size];
+        arcs = used;
+        
+        for (int i = 0; i < size; i++) agents[i].setGraph(this, i);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of agents in the graph.
+    **/
+    public int getNumberOfAgents() {
+        return agents.length;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets an agent by id.
+    **/
+    public Agent getAgent(int id) {
+        return agents[id];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the start of the names of agents that don't have one.
+     * null, the default, leaves them without names.
+    **/
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the name for an agent without one: the name prefix 
+     * followed by the agent's id, or null if there's no prefix.
+    **/
+    public String getAgentName(int id) {
+        return (namePrefix == null) ? null : namePrefix + id;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of one-way links. 
+     * Two-way links count twice.
+    **/
+    public long getNumberOfArcs() {
+        return arcs;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets a count of the changes made to the graph.
+     * Goes up whenever a link is added or removed.
+    **/
+    public int getModCount() {
+        return modCount;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of neighbours an agent has.
+    **/
+    public int getDegree(int id) {
+        return degrees[id];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the id of an agent's i-th neighbour.
+    **/
+    public int getNeighbour(int id, int i) {
+        if ((i < 0) || (i >= degrees[id])) throw new ArrayIndexOutOfBoundsException(i);
+        return targets[offsets[id] + i];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the array holding all the rows of neighbour ids.
+     * An agent's neighbours are at getOffset(id) to getOffset(id) + getDegree(id) - 1. 
+     * The array is replaced when rows are added to or compacted, so it 
+     * should be got again after any change to the graph.
+    **/
+    public int [] getTargets() {
+        return targets;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets where an agent's row starts in the targets array.
+    **/
+    public int getOffset(int id) {
+        return offsets[id];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether b is one of a's neighbours.
+    **/
+    public boolean hasArc(int a, int b) {
+        
+        int start = offsets[a];
+        int end = start + degrees[a];
+        
+        for (int i = start; i < end; i++) {
+            if (targets[i] == b) return true;
+        }
+        return false;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds b to the end of a's neighbours.
+     * Like Vector.add, this doesn't check whether b is already there.
+    **/
+    public void addArc(int a, int b) {
+        record(ADD, a, 0, b);
+        appendArc(a, b);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Links a and b both ways, if they aren't already linked.
+     * Returns true if a link was made.
+    **/
+    public boolean addLink(int a, int b) {
+        
+        boolean added = false;
+        
+        if (hasArc(a, b) == false) {
+            addArc(a, b);
+            added = true;
+        }
+        if (hasArc(b, a) == false) {
+            addArc(b, a);
+            added = true;
+        }
+        return added;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Puts b in a's neighbours at the given position, moving later ones along.
+    **/
+    public void insertArc(int a, int index, int b) {
+        
+        if ((index < 0) || (index > degrees[a])) throw new ArrayIndexOutOfBoundsException(index);
+        
+        record(INSERT, a, index, b);
+        appendArc(a, b);
+        int start = offsets[a] + index;
+        System.arraycopy(targets, start, targets, start + 1, degrees[a] - 1 - index);
+        targets[start] = b;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Replaces the neighbour at the given position in a's neighbours.
+     * Returns the id of the neighbour replaced.
+    **/
+    public int setArc(int a, int index, int b) {
+        
+        int old = getNeighbour(a, index);
+        record(SET, a, index, b);
+        targets[offsets[a] + index] = b;
+        modCount++;
+        return old;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Removes the first b from a's neighbours, keeping the order of the rest.
+     * Returns false if b wasn't there.
+    **/
+    public boolean removeArc(int a, int b) {
+        
+        int start = offsets[a];
+        
+        for (int i = 0; i < degrees[a]; i++) {
+            if (targets[start + i] == b) {
+                removeArcAt(a, i);
+                return true;
+            }
+        }
+        return false;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Removes the neighbour at the given position in a's neighbours.
+     * Returns the id of the neighbour removed.
+    **/
+    public int removeArcAt(int a, int index) {
+        
+        int old = getNeighbour(a, index);
+        record(REMOVE, a, index, 0);
+        int start = offsets[a] + index;
+        System.arraycopy(targets, start + 1, targets, start, degrees[a] - 1 - index);
+        degrees[a]--;
+        arcs--;
+        modCount++;
+        return old;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Removes all of a's neighbours.
+     * This doesn't remove a from their neighbours.
+    **/
+    public void clearArcs(int a) {
+        record(CLEAR, a, 0, 0);
+        arcs = arcs - degrees[a];
+        degrees[a] = 0;
+        modCount++;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Starts or stops recording changes to the links and values. 
+     * Starting throws away any changes already recorded.
+    **/
+    public synchronized void setRecordingChanges(boolean recording) {
+        changes = (recording) ? new int[64] : null;
+        changeCount = 0;
+        changedValues = (recording) ? new int[64] : null;
+        changedValueCount = 0;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether changes are being recorded.
+    **/
+    public boolean isRecordingChanges() {
+        return changes != null;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Marks the values of the agents with the first length ids given as changed, 
+     * if recording. Agents' own updates don't do this; it's done for them by 
+     * whatever runs them (SmallWorldEngine and UpdateTask), which see each 
+     * agent's value before and after. Unlike the rest of the graph this 
+     * is synchronized, so agents updated in parallel can be marked.
+    **/
+    public synchronized void valuesChanged(int [] ids, int length) {
+        
+        if (changedValues == null) return;
+        
+        if (changedValueCount + length > changedValues.length) {
+            changedValues = Arrays.copyOf(changedValues, Math.max(changedValues.length * 2, changedValueCount + length));
+        }
+        System.arraycopy(ids, 0, changedValues, changedValueCount, length);
+        changedValueCount = changedValueCount + length;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the ids of the agents marked as having changed values since recording 
+     * started or this was last called. Returns an empty array if there 
+     * are none, or changes aren't being recorded.
+    **/
+    public synchronized int [] takeChangedValues() {
+        
+        if (changedValues == null) return new int[0];
+        
+        int [] taken = Arrays.copyOf(changedValues, changedValueCount);
+        changedValueCount = 0;
+        return taken;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the changes recorded since recording started or this was last 
+     * called, four ints each: the kind of change (ADD, INSERT, SET, REMOVE 
+     * or CLEAR), the agent whose row changed, the position in the row, and 
+     * the neighbour, as described for each kind. Returns an empty array if 
+     * there have been none, or changes aren't being recorded.
+    **/
+    public int [] takeChanges() {
+        
+        if (changes == null) return new int[0];
+        
+        int [] taken = Arrays.copyOf(changes, changeCount);
+        changeCount = 0;
+        return taken;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Makes the changes given, in the form given by takeChanges, again.
+    **/
+    public void applyChanges(int [] made, int length) {
+        
+        for (int i = 0; i < length; i = i + 4) {
+            
+            int a = made[i + 1];
+            int index = made[i + 2];
+            int b = made[i + 3];
+            
+            if (made[i] == ADD) {
+                addArc(a, b);
+            } else if (made[i] == INSERT) {
+                insertArc(a, index, b);
+            } else if (made[i] == SET) {
+                setArc(a, index, b);
+            } else if (made[i] == REMOVE) {
+                removeArcAt(a, index);
+            } else if (made[i] == CLEAR) {
+                clearArcs(a);
+            } else {
+                throw new IllegalArgumentException("Unknown change " + made[i]);
+            }
+            
+        }
+        
+    } // End of applyChanges.
+    
+    
+    
+    
+    
+    /**
+     * Squeezes out the spare room in the rows, leaving a plain CSR layout 
+     * taking four bytes per link. Worth calling when a lot of links have 
+     * been added, for example after small world connecting.
+    **/
+    public void compact() {
+        
+        int [] newTargets = new int[(int)Math.max(arcs, 16)];
+        int position = 0;
+        
+        for (int i = 0; i < agents.length; i++) {
+            System.arraycopy(targets, offsets[i], newTargets, position, degrees[i]);
+            offsets[i] = position;
+            capacities[i] = degrees[i];
+            position = position + degrees[i];
+        }
+        
+        targets = newTargets;
+        used = position;
+        wasted = 0;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds b to the end of a's neighbours without recording it.
+    **/
+    private void appendArc(int a, int b) {
+        
+        if (degrees[a] == capacities[a]) moveRow(a, Math.max(4, capacities[a] * 2));
+        targets[offsets[a] + degrees[a]] = b;
+        degrees[a]++;
+        arcs++;
+        modCount++;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Records a change, if recording.
+    **/
+    private void record(int kind, int a, int index, int b) {
+        
+        if (changes == null) return;
+        
+        if (changeCount + 4 > changes.length) changes = Arrays.copyOf(changes, changes.length * 2);
+        changes[changeCount++] = kind;
+        changes[changeCount++] = a;
+        changes[changeCount++] = index;
+        changes[changeCount++] = b;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Moves a row to the end of targets, giving it more room.
+     * If more than half of targets is gaps from moved rows, compacts first.
+    **/
+    private void moveRow(int a, int capacity) {
+        
+        if (wasted > used / 2) compact();
+        
+        if (used + capacity > targets.length) {
+            long length = Math.max((long)targets.length + (targets.length >> 1), (long)used + capacity);
+            if (length > Integer.MAX_VALUE - 8) length = Integer.MAX_VALUE - 8;
+            if (used + capacity > length) throw new IllegalStateException("Too many links for one AgentGraph");
+            targets = Arrays.copyOf(targets, (int)length);
+        }
+        
+        System.arraycopy(targets, offsets[a], targets, used, degrees[a]);
+        wasted = wasted + capacities[a];
+        offsets[a] = used;
+        capacities[a] = capacity;
+        used = used + capacity;
+        
+    } // End of moveRow.
+    
+    
+// End of class.
+}
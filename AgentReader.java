@@ -0,0 +1,554 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads agents from the XML-ish format written by AgentIO, one at a time.<P>
+ * The format has one agent per line, with the tags 
+ * &lt;AGENT-NAME&gt;&lt;/AGENT-NAME&gt; and &lt;AGENT-ATTRIBUTE&gt;&lt;/AGENT-ATTRIBUTE&gt;, 
+ * broadly based on the 
+ * <A href="http://www.fipa.org/specs/fipa00001/SC00001L.html#_Toc26668620">FIPA 
+ * Abstract Architecture Specification</A> for Agents, though it currently 
+ * misses the agent-locator property. The AGENT-NAME must be present. AGENT-ATTRIBUTE 
+ * tags can contain any name-value pair, for example &lt;AGENT-ATTRIBUTE>x=200&lt;/AGENT-ATTRIBUTE&gt;.
+ * x,y,z,graphX,graphY,graphZ,neighbours and value are recognised and parsed into the 
+ * relevant Agent variables, all others are stored as String-String pairs in 
+ * the Agent's attributes Hashtable. Neighbours are given as 
+ * &lt;AGENT-ATTRIBUTE&gt;neighbours=one&two&three&lt;/AGENT-ATTRIBUTE&gt;. As the 
+ * neighbours may come later in the file, their names are kept in a buffer of 
+ * pending links along with the position of the agent that named them, and 
+ * a table of names to positions is built as agents are read. Once all the 
+ * agents are in, connect makes all the links in one pass, looking each name 
+ * up in the table. Where two agents have the same name, links go to the first.<P>
+ * The file is read in one pass through a large character buffer. Tags are 
+ * recognised where they are, rather than by searching and cutting up 
+ * Strings, and numbers are worked out straight from the characters, so 
+ * the only objects made are the Agents and the Strings they keep.<P>
+ * Older versions of AgentIO closed general attributes with a second 
+ * &lt;AGENT-ATTRIBUTE&gt; tag rather than &lt;/AGENT-ATTRIBUTE&gt;; these 
+ * are read as if they were closed properly.<P>
+ * We do the cleaning up of missing coordinates in SmallWorldEngine 
+ * rather than here, because we know what is required to display 
+ * there - we don't make those assumptions here.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class AgentReader {
+    
+    private static final String NAME_TAG = "AGENT-NAME";             // Tag holding the name.
+    private static final String ATTRIBUTE_TAG = "AGENT-ATTRIBUTE";   // Tag holding a name-value pair.
+    
+    private static final int OUTSIDE = 0;       // Not in any tag's content.
+    private static final int NAME = 1;          // In a name.
+    private static final int KEY = 2;           // In an attribute, before the equals.
+    private static final int VALUE = 3;         // In an attribute, after the equals.
+    
+    private Reader reader = null;               // Where the characters come from.
+    private char [] buffer = new char[65536];   // Characters read but not yet used.
+    private int position = 0;                   // Next character to use in buffer.
+    private int limit = 0;                      // Number of characters in buffer.
+    private char [] text = new char[256];       // Content of the current name or value.
+    private int textLength = 0;                 // Used length of text.
+    private char [] key = new char[64];         // Current attribute's name.
+    private int keyLength = 0;                  // Used length of key.
+    private char [] tag = new char[32];         // Current tag.
+    private int tagLength = 0;                  // Used length of tag.
+    private HashMap names = new HashMap();      // Position of each agent read, by name.
+    private int count = 0;                      // Number of agents read.
+    private int [] pendingFrom = new int[1024]; // Position of the agent naming each pending link.
+    private String [] pendingNames = new String[1024];  // Name of the neighbour for each pending link.
+    private int pending = 0;                    // Number of pending links.
+    
+    
+    /** 
+     * Creates a new AgentReader reading from the given Reader.
+     * The Reader doesn't need to be buffered.
+    **/
+    public AgentReader(Reader reader) {
+        this.reader = reader;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the next agent.
+     * Lines without an AGENT-NAME are skipped. Returns null when there are no more. 
+     * The agent's neighbours are kept as pending links until connect is called.
+    **/
+    public Agent readAgent() throws IOException {
+        
+        Agent agent = null;
+        Hashtable attributes = null;
+        int neighbourStart = pending;
+        int state = OUTSIDE;
+        textLength = 0;
+        
+        while (true) {
+            
+            int c = next();
+            
+            // End of a line, or the file, ends the agent. 
+            // Anything in an unclosed tag is dropped.
+            
+            if ((c == -1) || (c == '\n') || (c == '\r')) {
+                
+                if ((agent != null) && (agent.getName() != null)) {
+                    if (attributes != null) agent.setAttributes(attributes);
+                    if (names.containsKey(agent.getName()) == false) {
+                        names.put(agent.getName(), Integer.valueOf(count));
+                    }
+                    count++;
+                    return agent;
+                }
+                
+                // No name, so drop the line, including any links it named.
+                
+                pending = neighbourStart;
+                if (c == -1) return null;
+                
+                agent = null;
+                attributes = null;
+                state = OUTSIDE;
+                textLength = 0;
+                continue;
+            }
+            
+            // Tags.
+            
+            if (c == '<') {
+                
+                boolean closing = readTag();
+                boolean attributeTag = tagIs(ATTRIBUTE_TAG);
+                
+                // Older versions of AgentIO closed attributes with an opening tag, 
+                // so an opening tag in an attribute ends it before starting the next.
+                
+                if (closing || (attributeTag && ((state == KEY) || (state == VALUE)))) {
+                    
+                    if ((state == NAME) && tagIs(NAME_TAG)) {
+                        if (agent == null) agent = new Agent();
+                        agent.setName(new String(text, 0, textLength));
+                    } else if ((state == VALUE) && attributeTag) {
+                        if (agent == null) agent = new Agent();
+                        if (setKnown(agent) == false) {
+                            if (keyIs("neighbours")) {
+                                addPending();
+                            } else {
+                                if (attributes == null) attributes = new Hashtable();
+                                attributes.put(trimmedKey(), new String(text, 0, textLength));
+                            }
+                        }
+                    }
+                    state = OUTSIDE;
+                }
+                
+                if (closing == false) {
+                    if (tagIs(NAME_TAG)) {
+                        state = NAME;
+                        textLength = 0;
+                    } else if (attributeTag) {
+                        state = KEY;
+                        keyLength = 0;
+                    }
+                }
+                continue;
+            }
+            
+            // Content.
+            
+            if (state == NAME || state == VALUE) {
+                addText((char)c);
+            } else if (state == KEY) {
+                if (c == '=') {
+                    state = VALUE;
+                    textLength = 0;
+                } else {
+                    if (keyLength == key.length) key = Arrays.copyOf(key, key.length * 2);
+                    key[keyLength++] = (char)c;
+                }
+            }
+        }
+        
+    } // End of readAgent.
+    
+    
+    
+    
+    
+    /**
+     * Reads all the agents and connects them up.
+    **/
+    public Vector readAgents() throws IOException {
+        
+        Vector agents = new Vector();
+        Agent agent = readAgent();
+        
+        while (agent != null) {
+            agents.addElement(agent);
+            agent = readAgent();
+        }
+        
+        connect(agents);
+        return agents;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Makes the pending links between the agents read so far.
+     * The Vector should hold the agents in the order readAgent returned them. 
+     * The agents are put in a new AgentGraph, and each pending link is made 
+     * both ways (unless already there) by looking the neighbour's name up 
+     * in the table of names. Links to names that aren't found are dropped.
+    **/
+    public AgentGraph connect(Vector agents) {
+        
+        Agent [] array = new Agent[agents.size()];
+        agents.copyInto(array);
+        
+        // Give each agent room for its share of the links both ways.
+        
+        int expected = (array.length == 0) ? 0 : Math.max(2, (2 * pending) / array.length);
+        AgentGraph graph = new AgentGraph(array, expected);
+        
+        for (int i = 0; i < pending; i++) {
+            Integer to = (Integer)names.get(pendingNames[i]);
+            if ((to != null) && (to.intValue() < array.length)) graph.addLink(pendingFrom[i], to.intValue());
+            pendingNames[i] = null;
+        }
+        
+        pending = 0;
+        return graph;
+        
+    } // End of connect.
+    
+    
+    
+    
+    
+    /**
+     * Closes the underlying Reader.
+    **/
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Fills the Agent variable named by the current key from the current text.
+     * Returns false if the key isn't one of the Agent's variables. Numbers that 
+     * can't be read are ignored, leaving the variable as it was.
+    **/
+    private boolean setKnown(Agent agent) {
+        
+        if (keyLength == 1) {
+            if (key[0] == 'x') {
+                if (isInt()) agent.setX(parseInt());
+                return true;
+            } else if (key[0] == 'y') {
+                if (isInt()) agent.setY(parseInt());
+                return true;
+            } else if (key[0] == 'z') {
+                if (isInt()) agent.setZ(parseInt());
+                return true;
+            }
+        } else if (keyIs("graphX")) {
+            if (isInt()) agent.setGraphX(parseInt());
+            return true;
+        } else if (keyIs("graphY")) {
+            if (isInt()) agent.setGraphY(parseInt());
+            return true;
+        } else if (keyIs("graphZ")) {
+            if (isInt()) agent.setGraphZ(parseInt());
+            return true;
+        } else if (keyIs("value")) {
+            try {
+                agent.setValue(parseDouble());
+            } catch (NumberFormatException nfe) {}
+            return true;
+        }
+        return false;
+        
+    } // End of setKnown.
+    
+    
+    
+    
+    
+    /**
+     * Adds a pending link from the current agent to each '&' separated 
+     * name in the current text.
+    **/
+    private void addPending() {
+        
+        int start = 0;
+        
+        for (int i = 0; i <= textLength; i++) {
+            if ((i == textLength) || (text[i] == '&')) {
+                if (i > start) {
+                    if (pending == pendingFrom.length) {
+                        pendingFrom = Arrays.copyOf(pendingFrom, pending * 2);
+                        pendingNames = Arrays.copyOf(pendingNames, pending * 2);
+                    }
+                    pendingFrom[pending] = count;
+                    pendingNames[pending] = new String(text, start, i - start);
+                    pending++;
+                }
+                start = i + 1;
+            }
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks the current text is a whole number that fits in an int.
+    **/
+    private boolean isInt() {
+        
+        int start = ((textLength > 0) && ((text[0] == '-') || (text[0] == '+'))) ? 1 : 0;
+        if ((textLength == start) || (textLength - start > 10)) return false;
+        
+        for (int i = start; i < textLength; i++) {
+            if ((text[i] < '0') || (text[i] > '9')) return false;
+        }
+        
+        long n = parseLong(start);
+        return (n >= Integer.MIN_VALUE) && (n <= Integer.MAX_VALUE);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the current text as an int. Call isInt first.
+    **/
+    private int parseInt() {
+        int start = ((text[0] == '-') || (text[0] == '+')) ? 1 : 0;
+        return (int)parseLong(start);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the digits of the current text from start, applying any sign.
+    **/
+    private long parseLong(int start) {
+        
+        long n = 0;
+        for (int i = start; i < textLength; i++) n = (n * 10) + (text[i] - '0');
+        return (text[0] == '-') ? -n : n;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the current text as a double.
+     * Plain decimals like "12.5" are worked out directly when that is exact; 
+     * anything else (exponents, long fractions, "NaN") goes through Double.parseDouble.
+    **/
+    private double parseDouble() {
+        
+        int i = ((textLength > 0) && ((text[0] == '-') || (text[0] == '+'))) ? 1 : 0;
+        long digits = 0;
+        int count = 0;
+        int fraction = -1;
+        boolean simple = textLength > i;
+        
+        for (; i < textLength; i++) {
+            char c = text[i];
+            if ((c >= '0') && (c <= '9')) {
+                digits = (digits * 10) + (c - '0');
+                count++;
+                if (fraction > -1) fraction++;
+            } else if ((c == '.') && (fraction == -1)) {
+                fraction = 0;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+        
+        // Up to 15 digits and 22 powers of ten are both exact in a double, 
+        // so one division gives the correctly rounded result.
+        
+        if (simple && (count > 0) && (count <= 15) && (fraction <= 22)) {
+            double d = (fraction > 0) ? (double)digits / POWERS[fraction] : (double)digits;
+            return (text[0] == '-') ? -d : d;
+        }
+        return Double.parseDouble(new String(text, 0, textLength).trim());
+        
+    } // End of parseDouble.
+    
+    
+    private static final double [] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    
+    
+    
+    
+    
+    /**
+     * Reads a tag after its '<', up to and including the '>'.
+     * Stops early at the end of a line, leaving that for readAgent. 
+     * Returns true if it is a closing tag.
+    **/
+    private boolean readTag() throws IOException {
+        
+        tagLength = 0;
+        
+        while (true) {
+            int c = peek();
+            if ((c == -1) || (c == '\n') || (c == '\r')) break;
+            position++;
+            if (c == '>') break;
+            if (tagLength == tag.length) tag = Arrays.copyOf(tag, tag.length * 2);
+            tag[tagLength++] = (char)c;
+        }
+        return (tagLength > 0) && (tag[0] == '/');
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether the current tag is the given one, opening or closing.
+    **/
+    private boolean tagIs(String name) {
+        int start = ((tagLength > 0) && (tag[0] == '/')) ? 1 : 0;
+        return matches(tag, start, tagLength, name);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether the current key is the given one.
+    **/
+    private boolean keyIs(String name) {
+        return matches(key, 0, keyLength, name);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the current key as a String, without any leading or trailing spaces 
+     * (which older versions of AgentIO put in).
+    **/
+    private String trimmedKey() {
+        
+        int start = 0;
+        int end = keyLength;
+        while ((start < end) && (key[start] == ' ')) start++;
+        while ((end > start) && (key[end - 1] == ' ')) end--;
+        return new String(key, start, end - start);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Compares part of a char array with a String.
+    **/
+    private static boolean matches(char [] chars, int start, int end, String s) {
+        
+        if (end - start != s.length()) return false;
+        for (int i = start; i < end; i++) {
+            if (chars[i] != s.charAt(i - start)) return false;
+        }
+        return true;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds a character to the current text.
+    **/
+    private void addText(char c) {
+        if (textLength == text.length) text = Arrays.copyOf(text, text.length * 2);
+        text[textLength++] = c;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the next character, or -1 at the end.
+    **/
+    private int next() throws IOException {
+        int c = peek();
+        if (c != -1) position++;
+        return c;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Looks at the next character without using it, or -1 at the end.
+    **/
+    private int peek() throws IOException {
+        
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+        
+    }
+    
+    
+// End of class.
+}
@@ -0,0 +1,555 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads and writes agents and their links as a compact binary snapshot.<P>
+ * Snapshots hold the same things as the XML files written by AgentIO, but 
+ * laid out as fixed width columns, so that large worlds can be saved and 
+ * opened again without any text to make or parse. The file is:
+ * <UL>
+ * <LI>A header: the int MAGIC, the int VERSION, the number of agents, the 
+ * number of Strings in the String table, the number of links (a long), 
+ * and the number of attribute pairs (a long).</LI>
+ * <LI>A column of doubles giving each agent's value.</LI>
+ * <LI>Columns of ints for x, y, z, graphX, graphY and graphZ.</LI>
+ * <LI>A column of ints giving the position of each agent's name in the 
+ * String table, or -1 for no name.</LI>
+ * <LI>A column of ints giving each agent's number of neighbours, then the 
+ * neighbours themselves as agent positions, row after row (i.e. a CSR 
+ * layout, as in AgentGraph).</LI>
+ * <LI>A column of ints giving each agent's number of attributes, then the 
+ * attributes as pairs of positions in the String table, name then value.</LI>
+ * <LI>The String table: each String as an int length followed by its 
+ * bytes in UTF-8. Names and attributes that are the same share an entry.</LI>
+ * </UL>
+ * Numbers are big-endian, as written by DataOutputStream. Attributes are 
+ * written using the toString of their names and values, and read back as 
+ * Strings, which is how AgentReader gives them anyway. Agents with no, or 
+ * an empty, attributes Hashtable come back with none. Agents are read as 
+ * plain Agents, in an AgentGraph of their own.<P>
+ * Reading maps the file into memory with a FileChannel and copies each 
+ * column straight into the arrays it is wanted in, so the OS does the 
+ * reading and the links go into the AgentGraph without being looked up. 
+ * Writing goes through one direct buffer, in file order, with the header 
+ * written last, once the counts are known.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class AgentSnapshot {
+    
+    public static final int MAGIC = 0x53575331;             // "SWS1", marks a snapshot.
+    public static final int VERSION = 1;                    // Layout written by this class.
+    public static final String EXTENSION = ".sws";          // File ending AgentIO uses to pick snapshots.
+    
+    private static final int HEADER = 32;                   // Bytes in the header.
+    private static final long MAP_LIMIT = 1L << 28;         // Largest part of the file mapped in one go.
+    
+    private FileChannel channel = null;                     // File being written or read.
+    private ByteBuffer buffer = null;                       // Bytes waiting to be written.
+    private ArrayList strings = null;                       // String table being written.
+    private HashMap stringIds = null;                       // Position of each String in the table.
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a file starts with MAGIC, i.e. is a snapshot.
+    **/
+    public static boolean isSnapshot(File file) throws IOException {
+        
+        if (file.length() < HEADER) return false;
+        
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        
+        try {
+            return in.readInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes agents and their links to a snapshot file.
+     * Links to agents not in the Vector are dropped. If the agents 
+     * are all of one AgentGraph they're written in graph order, with 
+     * the links copied straight from the graph; otherwise they're 
+     * written in the order of the Vector.
+    **/
+    public void write(Vector agentVector, File file) throws IOException {
+        
+        // Get the agents in the order they'll be written, and an id for each.
+        
+        int size = agentVector.size();
+        Agent [] agents = new Agent[size];
+        AgentGraph graph = sharedGraph(agentVector);
+        IdentityHashMap ids = null;
+        
+        if (graph != null) {
+            for (int i = 0; i < size; i++) agents[i] = graph.getAgent(i);
+        } else {
+            ids = new IdentityHashMap(size * 2);
+            for (int i = 0; i < size; i++) {
+                agents[i] = (Agent)agentVector.elementAt(i);
+                ids.put(agents[i], Integer.valueOf(i));
+            }
+        }
+        
+        strings = new ArrayList();
+        stringIds = new HashMap();
+        buffer = ByteBuffer.allocateDirect(1 << 20);
+        channel = new FileOutputStream(file).getChannel();
+        
+        try {
+            
+            // Leave room for the header, which is written at the end.
+            
+            channel.position(HEADER);
+            
+            for (int i = 0; i < size; i++) putDouble(agents[i].getValue());
+            for (int i = 0; i < size; i++) putInt(agents[i].getX());
+            for (int i = 0; i < size; i++) putInt(agents[i].getY());
+            for (int i = 0; i < size; i++) putInt(agents[i].getZ());
+            for (int i = 0; i < size; i++) putInt(agents[i].getGraphX());
+            for (int i = 0; i < size; i++) putInt(agents[i].getGraphY());
+            for (int i = 0; i < size; i++) putInt(agents[i].getGraphZ());
+            for (int i = 0; i < size; i++) putInt(stringId(agents[i].getName()));
+            
+            // Links.
+            
+            long links = 0;
+            
+            if (graph != null) {
+                
+                int [] targets = graph.getTargets();
+                for (int i = 0; i < size; i++) putInt(graph.getDegree(i));
+                for (int i = 0; i < size; i++) {
+                    int offset = graph.getOffset(i);
+                    int end = offset + graph.getDegree(i);
+                    for (int j = offset; j < end; j++) putInt(targets[j]);
+                }
+                links = graph.getNumberOfArcs();
+                
+            } else {
+                
+                for (int i = 0; i < size; i++) {
+                    Vector neighbours = agents[i].getNeighbours();
+                    int degree = 0;
+                    for (int j = 0; j < neighbours.size(); j++) {
+                        if (ids.containsKey(neighbours.elementAt(j))) degree++;
+                    }
+                    putInt(degree);
+                }
+                for (int i = 0; i < size; i++) {
+                    Vector neighbours = agents[i].getNeighbours();
+                    for (int j = 0; j < neighbours.size(); j++) {
+                        Integer id = (Integer)ids.get(neighbours.elementAt(j));
+                        if (id != null) {
+                            putInt(id.intValue());
+                            links++;
+                        }
+                    }
+                }
+                
+            }
+            
+            // Attributes.
+            
+            long pairs = 0;
+            
+            for (int i = 0; i < size; i++) {
+                Hashtable attributes = agents[i].getAttributes();
+                putInt((attributes == null) ? 0 : attributes.size());
+            }
+            for (int i = 0; i < size; i++) {
+                Hashtable attributes = agents[i].getAttributes();
+                if (attributes == null) continue;
+                for (Iterator entries = attributes.entrySet().iterator(); entries.hasNext(); ) {
+                    Map.Entry entry = (Map.Entry)entries.next();
+                    putInt(stringId(String.valueOf(entry.getKey())));
+                    putInt(stringId(String.valueOf(entry.getValue())));
+                    pairs++;
+                }
+            }
+            
+            // String table.
+            
+            for (int i = 0; i < strings.size(); i++) {
+                byte [] bytes = ((String)strings.get(i)).getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length);
+                for (int j = 0; j < bytes.length; j += buffer.capacity()) {
+                    int length = Math.min(buffer.capacity(), bytes.length - j);
+                    if (buffer.remaining() < length) flush();
+                    buffer.put(bytes, j, length);
+                }
+            }
+            flush();
+            
+            // Go back and fill in the header.
+            
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(size);
+            buffer.putInt(strings.size());
+            buffer.putLong(links);
+            buffer.putLong(pairs);
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer, HEADER - buffer.remaining());
+            
+        } finally {
+            channel.close();
+            channel = null;
+            buffer = null;
+            strings = null;
+            stringIds = null;
+        }
+        
+    } // End of write.
+    
+    
+    
+    
+    
+    /**
+     * Reads agents and their links from a snapshot file.
+     * The agents come back connected up in a new AgentGraph, in the 
+     * order they were written.
+    **/
+    public Vector read(File file) throws IOException {
+        
+        channel = new FileInputStream(file).getChannel();
+        
+        try {
+            
+            // Check the header.
+            
+            if (channel.size() < HEADER) throw new IOException(file + " is too short to be an agent snapshot");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getInt() != MAGIC) throw new IOException(file + " is not an agent snapshot");
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException(file + " is snapshot version " + version + ", but only version " + VERSION + " can be read");
+            int size = header.getInt();
+            int stringCount = header.getInt();
+            long links = header.getLong();
+            long pairs = header.getLong();
+            if ((size < 0) || (stringCount < 0) || (links < 0) || (links > Integer.MAX_VALUE - 8) || (pairs < 0) || (pairs > Integer.MAX_VALUE / 2)) {
+                throw new IOException(file + " has a corrupt snapshot header");
+            }
+            
+            long position = HEADER;
+            
+            // Columns.
+            
+            Agent [] agents = new Agent[size];
+            for (int i = 0; i < size; i++) agents[i] = new Agent();
+            
+            double [] values = new double[size];
+            position = readDoubles(position, values, size);
+            for (int i = 0; i < size; i++) agents[i].setValue(values[i]);
+            values = null;
+            
+            int [] column = new int[size];
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) agents[i].setX(column[i]);
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) agents[i].setY(column[i]);
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) agents[i].setZ(column[i]);
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) agents[i].setGraphX(column[i]);
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) agents[i].setGraphY(column[i]);
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) agents[i].setGraphZ(column[i]);
+            
+            int [] nameIds = new int[size];
+            position = readInts(position, nameIds, size);
+            
+            // Links, turning the degrees into row starts.
+            
+            int [] rowStarts = new int[size + 1];
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) {
+                if ((column[i] < 0) || (rowStarts[i] + (long)column[i] > links)) throw new IOException(file + " has corrupt links");
+                rowStarts[i + 1] = rowStarts[i] + column[i];
+            }
+            if (rowStarts[size] != links) throw new IOException(file + " has corrupt links");
+            
+            int [] targets = new int[(int)Math.max(links, 16)];
+            position = readInts(position, targets, (int)links);
+            for (int i = 0; i < links; i++) {
+                if ((targets[i] < 0) || (targets[i] >= size)) throw new IOException(file + " has corrupt links");
+            }
+            
+            // Attributes, again turning the counts into starts.
+            
+            int [] attributeStarts = new int[size + 1];
+            position = readInts(position, column, size);
+            for (int i = 0; i < size; i++) {
+                if ((column[i] < 0) || (attributeStarts[i] + (long)column[i] > pairs)) throw new IOException(file + " has corrupt attributes");
+                attributeStarts[i + 1] = attributeStarts[i] + column[i];
+            }
+            column = null;
+            
+            int [] attributeIds = new int[(int)pairs * 2];
+            position = readInts(position, attributeIds, attributeIds.length);
+            
+            // Strings, then fill in the names and attributes from them.
+            
+            String [] table = readStrings(position, stringCount);
+            
+            for (int i = 0; i < size; i++) {
+                
+                agents[i].setName(string(table, nameIds[i]));
+                
+                if (attributeStarts[i + 1] > attributeStarts[i]) {
+                    Hashtable attributes = new Hashtable();
+                    for (int j = attributeStarts[i]; j < attributeStarts[i + 1]; j++) {
+                        attributes.put(string(table, attributeIds[2 * j]), string(table, attributeIds[2 * j + 1]));
+                    }
+                    agents[i].setAttributes(attributes);
+                }
+                
+            }
+            
+            new AgentGraph(agents, rowStarts, targets);
+            
+            Vector agentVector = new Vector(size);
+            for (int i = 0; i < size; i++) agentVector.addElement(agents[i]);
+            return agentVector;
+            
+        } finally {
+            channel.close();
+            channel = null;
+        }
+        
+    } // End of read.
+    
+    
+    
+    
+    
+    /**
+     * Gets the AgentGraph holding exactly the agents in a Vector, if there is one.
+    **/
+    private AgentGraph sharedGraph(Vector agentVector) {
+        
+        if (agentVector.isEmpty()) return null;
+        
+        AgentGraph graph = ((Agent)agentVector.elementAt(0)).getGraph();
+        if ((graph == null) || (graph.getNumberOfAgents() != agentVector.size())) return null;
+        
+        // Agents have one graph and id each, so if they're all in 
+        // this graph they must be all of it.
+        
+        for (int i = 0; i < agentVector.size(); i++) {
+            if (((Agent)agentVector.elementAt(i)).getGraph() != graph) return null;
+        }
+        
+        return graph;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets a String's position in the String table being written, adding it if need be.
+    **/
+    private int stringId(String string) {
+        
+        if (string == null) return -1;
+        
+        Integer id = (Integer)stringIds.get(string);
+        
+        if (id == null) {
+            id = Integer.valueOf(strings.size());
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        
+        return id.intValue();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets a String from the table read in, checking its position.
+    **/
+    private String string(String [] table, int id) throws IOException {
+        if (id == -1) return null;
+        if ((id < 0) || (id >= table.length)) throw new IOException("Corrupt String table position " + id);
+        return table[id];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds an int to the write buffer.
+    **/
+    private void putInt(int i) throws IOException {
+        if (buffer.remaining() < 4) flush();
+        buffer.putInt(i);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds a double to the write buffer.
+    **/
+    private void putDouble(double d) throws IOException {
+        if (buffer.remaining() < 8) flush();
+        buffer.putDouble(d);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes out the write buffer.
+    **/
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Maps part of the file being read.
+    **/
+    private ByteBuffer map(long position, long length) throws IOException {
+        if (position + length > channel.size()) throw new IOException("Agent snapshot is truncated");
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Copies count ints from the file into an array, a mapped part at a time.
+     * Returns the position after them.
+    **/
+    private long readInts(long position, int [] into, int count) throws IOException {
+        
+        int done = 0;
+        
+        while (done < count) {
+            int chunk = (int)Math.min(count - done, MAP_LIMIT / 4);
+            map(position, (long)chunk * 4).asIntBuffer().get(into, done, chunk);
+            done = done + chunk;
+            position = position + (long)chunk * 4;
+        }
+        
+        return position;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Copies count doubles from the file into an array, a mapped part at a time.
+     * Returns the position after them.
+    **/
+    private long readDoubles(long position, double [] into, int count) throws IOException {
+        
+        int done = 0;
+        
+        while (done < count) {
+            int chunk = (int)Math.min(count - done, MAP_LIMIT / 8);
+            map(position, (long)chunk * 8).asDoubleBuffer().get(into, done, chunk);
+            done = done + chunk;
+            position = position + (long)chunk * 8;
+        }
+        
+        return position;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the String table, which runs from position to the end of the file.
+    **/
+    private String [] readStrings(long position, int count) throws IOException {
+        
+        String [] table = new String[count];
+        byte [] bytes = new byte[256];
+        ByteBuffer mapped = null;
+        long mappedAt = position;
+        
+        for (int i = 0; i < count; i++) {
+            
+            // Remap when the next length, or String, runs past the mapped part.
+            
+            if ((mapped == null) || (mapped.remaining() < 4)) {
+                mappedAt = mappedAt + ((mapped == null) ? 0 : mapped.position());
+                mapped = map(mappedAt, Math.min(MAP_LIMIT, channel.size() - mappedAt));
+                if (mapped.remaining() < 4) throw new IOException("Agent snapshot is truncated");
+            }
+            
+            int length = mapped.getInt();
+            if (length < 0) throw new IOException("Corrupt String length in agent snapshot");
+            if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+            
+            if (mapped.remaining() < length) {
+                mappedAt = mappedAt + mapped.position();
+                mapped = map(mappedAt, Math.min(Math.max(MAP_LIMIT, length), channel.size() - mappedAt));
+                if (mapped.remaining() < length) throw new IOException("Agent snapshot is truncated");
+            }
+            
+            mapped.get(bytes, 0, length);
+            table[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            
+        }
+        
+        return table;
+        
+    }
+
+// End of class.
+}
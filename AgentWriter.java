@@ -0,0 +1,415 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+/**
+ * Writes agents in the XML-ish format read by AgentReader.<P>
+ * Agents are encoded a chunk at a time straight into reusable byte arrays, 
+ * numbers being turned into digits without making Strings, and each chunk 
+ * goes to the file through a FileChannel in one write. For large numbers of 
+ * agents, several chunks are encoded at once on a ForkJoinPool and then 
+ * written in order, so the file is the same whatever the number of threads.<P>
+ * Each agent goes on one line, with its name, value, coordinates, the names 
+ * of its neighbours, and any attributes, all in properly closed tags. 
+ * Doubles with no fractional part are written as a whole number followed 
+ * by ".0", which is what Double.toString gives; other doubles go through 
+ * Double.toString so they read back exactly. Text is written as UTF-8.<P>
+ * Like the rest of the model, the agents shouldn't be changed while they're 
+ * being written.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class AgentWriter {
+    
+    private static final int CHUNK = 4096;                 // Agents encoded in one go.
+    
+    private static final byte [] NAME_OPEN = ascii("<AGENT-NAME>");
+    private static final byte [] NAME_CLOSE = ascii("</AGENT-NAME>");
+    private static final byte [] VALUE_OPEN = ascii("<AGENT-ATTRIBUTE>value=");
+    private static final byte [] X_OPEN = ascii("<AGENT-ATTRIBUTE>x=");
+    private static final byte [] Y_OPEN = ascii("<AGENT-ATTRIBUTE>y=");
+    private static final byte [] Z_OPEN = ascii("<AGENT-ATTRIBUTE>z=");
+    private static final byte [] GRAPH_X_OPEN = ascii("<AGENT-ATTRIBUTE>graphX=");
+    private static final byte [] GRAPH_Y_OPEN = ascii("<AGENT-ATTRIBUTE>graphY=");
+    private static final byte [] GRAPH_Z_OPEN = ascii("<AGENT-ATTRIBUTE>graphZ=");
+    private static final byte [] NEIGHBOURS_OPEN = ascii("<AGENT-ATTRIBUTE>neighbours=");
+    private static final byte [] ATTRIBUTE_OPEN = ascii("<AGENT-ATTRIBUTE>");
+    private static final byte [] ATTRIBUTE_CLOSE = ascii("</AGENT-ATTRIBUTE>");
+    private static final byte [] NULL = ascii("null");
+    
+    private int parallelism = Runtime.getRuntime().availableProcessors();  // Threads encoding chunks.
+    
+    
+    
+    
+    
+    /**
+     * Sets the number of threads to encode with.
+     * Default is the number of processors.
+    **/
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes agents to a file, replacing anything in it.
+    **/
+    public void write(Vector agents, File file) throws IOException {
+        write(agents, new FileOutputStream(file).getChannel());
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes agents to a stream, for example one compressing them 
+     * (see AgentCompression), closing it at the end.
+    **/
+    public void write(Vector agents, OutputStream out) throws IOException {
+        write(agents, Channels.newChannel(out));
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes agents to a channel, closing it at the end.
+    **/
+    private void write(Vector agents, WritableByteChannel channel) throws IOException {
+        
+        int size = agents.size();
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        int batch = (parallelism == 1) ? 1 : Math.min(parallelism * 2, chunks);
+        
+        Chunk [] encoders = new Chunk[Math.max(batch, 1)];
+        for (int i = 0; i < encoders.length; i++) encoders[i] = new Chunk();
+        
+        ForkJoinPool pool = (batch > 1) ? new ForkJoinPool(parallelism) : null;
+        
+        try {
+            
+            for (int first = 0; first < chunks; first += encoders.length) {
+                
+                int count = Math.min(encoders.length, chunks - first);
+                int start = first;
+                
+                // Encode a batch of chunks, in parallel if there's more than one.
+                
+                if (count == 1) {
+                    encoders[0].encode(agents, start * CHUNK, Math.min(size, (start + 1) * CHUNK));
+                } else {
+                    pool.submit(() -> IntStream.range(0, count).parallel().forEach(j -> 
+                        encoders[j].encode(agents, (start + j) * CHUNK, Math.min(size, (start + j + 1) * CHUNK)))).get();
+                }
+                
+                // Then write them in order.
+                
+                for (int j = 0; j < count; j++) {
+                    ByteBuffer bytes = ByteBuffer.wrap(encoders[j].bytes, 0, encoders[j].length);
+                    while (bytes.hasRemaining()) channel.write(bytes);
+                }
+                
+            }
+            
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing agents");
+        } catch (ExecutionException ee) {
+            throw new RuntimeException(ee.getCause());
+        } finally {
+            if (pool != null) pool.shutdown();
+            channel.close();
+        }
+        
+    } // End of write.
+    
+    
+    
+    
+    
+    /**
+     * Gets the bytes of a String known to be ASCII.
+    **/
+    private static byte [] ascii(String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Encodes a run of agents into a growable byte array.
+     * Each thread uses its own Chunk, and the array is kept for the next run.
+    **/
+    private static class Chunk {
+        
+        byte [] bytes = new byte[CHUNK * 256];     // Encoded agents.
+        int length = 0;                            // Used length of bytes.
+        
+        
+        
+        
+        
+        /**
+         * Encodes agents start to end - 1, replacing anything encoded before.
+        **/
+        void encode(Vector agents, int start, int end) {
+            
+            length = 0;
+            
+            for (int i = start; i < end; i++) {
+                
+                Agent agent = (Agent)agents.elementAt(i);
+                
+                // Write the default variables.
+                
+                String name = agent.getName();
+                if (name != null) {
+                    put(NAME_OPEN);
+                    putText(name);
+                    put(NAME_CLOSE);
+                }
+                put(VALUE_OPEN);
+                putDouble(agent.getValue());
+                put(ATTRIBUTE_CLOSE);
+                putInt(X_OPEN, agent.getX());
+                putInt(Y_OPEN, agent.getY());
+                putInt(Z_OPEN, agent.getZ());
+                putInt(GRAPH_X_OPEN, agent.getGraphX());
+                putInt(GRAPH_Y_OPEN, agent.getGraphY());
+                putInt(GRAPH_Z_OPEN, agent.getGraphZ());
+                
+                // Write the neighbours, if they exist, straight from the graph if there is one.
+                
+                AgentGraph graph = agent.getGraph();
+                
+                if (graph != null) {
+                    int id = agent.getId();
+                    int degree = graph.getDegree(id);
+                    int [] targets = graph.getTargets();
+                    int offset = graph.getOffset(id);
+                    for (int j = 0; j < degree; j++) {
+                        if (j == 0) {
+                            put(NEIGHBOURS_OPEN);
+                        } else {
+                            put((byte)'&');
+                        }
+                        putName(graph.getAgent(targets[offset + j]).getName());
+                    }
+                    if (degree > 0) put(ATTRIBUTE_CLOSE);
+                } else {
+                    Vector neighbours = agent.getNeighbours();
+                    for (int j = 0; j < neighbours.size(); j++) {
+                        if (j == 0) {
+                            put(NEIGHBOURS_OPEN);
+                        } else {
+                            put((byte)'&');
+                        }
+                        putName(((Agent)neighbours.elementAt(j)).getName());
+                    }
+                    if (neighbours.size() > 0) put(ATTRIBUTE_CLOSE);
+                }
+                
+                // Write any other attributes.
+                
+                Hashtable attributes = agent.getAttributes();
+                if (attributes != null) {
+                    for (Iterator entries = attributes.entrySet().iterator(); entries.hasNext(); ) {
+                        Map.Entry entry = (Map.Entry)entries.next();
+                        put(ATTRIBUTE_OPEN);
+                        putText(String.valueOf(entry.getKey()));
+                        put((byte)'=');
+                        putText(String.valueOf(entry.getValue()));
+                        put(ATTRIBUTE_CLOSE);
+                    }
+                }
+                
+                put((byte)'\n');
+                
+            } // End looping through each Agent.
+            
+        } // End of encode.
+        
+        
+        
+        
+        
+        /**
+         * Makes sure there's room for more bytes.
+        **/
+        private void ensure(int more) {
+            if (length + more > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds a byte.
+        **/
+        private void put(byte b) {
+            ensure(1);
+            bytes[length++] = b;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds some bytes.
+        **/
+        private void put(byte [] more) {
+            ensure(more.length);
+            System.arraycopy(more, 0, bytes, length, more.length);
+            length = length + more.length;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds a neighbour's name, or "null" if it hasn't one, as the old exporter did.
+        **/
+        private void putName(String name) {
+            if (name == null) {
+                put(NULL);
+            } else {
+                putText(name);
+            }
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds text as UTF-8. ASCII is copied a char at a time; 
+         * anything else is left to String.getBytes.
+        **/
+        private void putText(String text) {
+            
+            int size = text.length();
+            ensure(size);
+            
+            for (int i = 0; i < size; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) {
+                    put(text.substring(i).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                bytes[length++] = (byte)c;
+            }
+            
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds a whole attribute holding an int.
+        **/
+        private void putInt(byte [] open, int i) {
+            put(open);
+            putLong(i);
+            put(ATTRIBUTE_CLOSE);
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds the digits of a long.
+        **/
+        private void putLong(long l) {
+            
+            ensure(20);
+            
+            if (l == Long.MIN_VALUE) {
+                put(ascii(Long.toString(l)));
+                return;
+            }
+            
+            if (l < 0) {
+                bytes[length++] = (byte)'-';
+                l = -l;
+            }
+            
+            // Write the digits backwards then turn them round.
+            
+            int first = length;
+            do {
+                bytes[length++] = (byte)('0' + (int)(l % 10));
+                l = l / 10;
+            } while (l != 0);
+            
+            for (int a = first, b = length - 1; a < b; a++, b--) {
+                byte swap = bytes[a];
+                bytes[a] = bytes[b];
+                bytes[b] = swap;
+            }
+            
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds a double as Double.toString would write it.
+        **/
+        private void putDouble(double d) {
+            
+            // Whole numbers below 10^7 are written as digits then ".0" by 
+            // Double.toString; bigger ones go into E notation.
+            
+            if ((d == (long)d) && (Math.abs(d) < 1.0e7) && !((d == 0) && (1 / d < 0))) {
+                putLong((long)d);
+                put((byte)'.');
+                put((byte)'0');
+            } else {
+                put(ascii(Double.toString(d)));
+            }
+            
+        }
+    
+    // End of Chunk.
+    }
+
+// End of class.
+}
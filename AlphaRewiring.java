@@ -0,0 +1,764 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Does the small world connecting of a set of agents using Watt's alpha model.<P>
+ * Agents are picked in a random order, and each links to one other agent, 
+ * chosen with a propensity that depends on how many neighbours the two have 
+ * in common. Rather than comparing every agent's neighbours with every other's 
+ * for each pick, the counts are kept in a MutualNeighbourTable which is updated 
+ * as links are made, so only agents that actually share neighbours need looking at.<P>
+ * Propensities are looked up in a table by shared neighbour count, worked out 
+ * again whenever k, alpha or the constant are set, rather than calling Math.pow 
+ * for each candidate. Every agent has at least the constant propensity, so 
+ * this is treated as one background mass spread evenly over all the agents, 
+ * and only the extra propensity of agents sharing neighbours with the chooser 
+ * is added up for each pick.<P>
+ * If given a distance scale, the connecting is geographical as well: each 
+ * propensity is multiplied by exp(-d / scale), for d the distance between the 
+ * agents' x and y. Agents within SEARCH_SCALES scales of the chooser are found 
+ * through a SpatialIndex and weighted exactly, as are those sharing neighbours 
+ * with it. The far tail of the population is estimated from TAIL_SAMPLES 
+ * agents picked at random, each standing in for (N - 1) / TAIL_SAMPLES agents, 
+ * so each pick looks at a few nearby cells and samples rather than all N agents.<P>
+ * Links are made in the agents' AgentGraph as they are found, so their 
+ * neighbour Vectors are up to date when run finishes.<P>
+ * With a parallelism above 1, the shuffled agents are taken in batches of 
+ * BATCH. All the agents in a batch pick at once, on a ForkJoinPool, from the 
+ * graph and table as they were at the start of the batch; the links are then 
+ * made one by one in the shuffled order, skipping any that already exist. 
+ * This differs from picking one at a time only in that a pick doesn't see 
+ * the links made earlier in its own batch, so at most BATCH - 1 links. Each 
+ * block of BLOCK agents in a batch has its own random number stream, split 
+ * off in order, so the result doesn't depend on the number of threads.<P>
+ * By default, as in Watt's model, every pick counts towards the k*N/2 
+ * connections, even if it picks an existing neighbour and so adds no link. 
+ * With exact counting, an agent's existing neighbours are left out of its 
+ * picks, only new links count, and connecting stops as soon as k*N/2 links 
+ * have been made (or a whole pass adds none). Either way, getLinksAddedRatio 
+ * gives the share of picks that made a link.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class AlphaRewiring {
+    
+    private AgentGraph graph = null;                // Agents to connect and their links.
+    private MutualNeighbourTable mutualNeighbours = null;   // Shared neighbour counts.
+    private double [] extraPropensities = null;     // Propensity above the constant, by shared neighbour count.
+    private double k = 4.0;                         // Watt's k.
+    private double alpha = 15.0;                    // Watt's alpha.
+    private double constant = 0.0000000001;         // Watt's constant.
+    private SplittableRandom random = null;         // Random numbers for shuffling and picking.
+    private ProgressListener listener = null;       // Told how the connecting is going, if set.
+    private long duplicates = 0;                    // Picks of existing neighbours not yet added to the stats.
+    private long added = 0;                         // Links made not yet added to the stats.
+    private long attempted = 0;                     // Picks not yet added to the stats.
+    private double distanceScale = 0;               // Distance over which propensity falls by e; 0 for none.
+    private double searchRadius = 0;                // Distance within which agents are weighted exactly.
+    private SpatialIndex places = null;             // Agents' geographical positions, if connecting geographically.
+    private int [] xs = null;                       // Geographical x of each agent.
+    private int [] ys = null;                       // Geographical y of each agent.
+    private int parallelism = 1;                    // Threads to pick with; 1 picks one at a time.
+    private Picker [] pickers = null;               // Pickers, one per block of a batch when picking in parallel.
+    private int [] picks = null;                    // Agents picked for each agent in a batch.
+    private boolean exact = false;                  // If true, only new links count, and neighbours aren't picked.
+    private long totalAttempts = 0;                 // Picks made by run.
+    private long totalAdded = 0;                    // Links made by run.
+    
+    public static final String TASK = "Small world connecting";    // Task name given to the listener.
+    private static final int REPORT_EVERY = 4096;   // Connections between progress reports.
+    public static final double SEARCH_SCALES = 3.0; // Distance scales within which agents are weighted exactly.
+    public static final int TAIL_SAMPLES = 32;      // Agents sampled for the far tail in a geographical pick.
+    public static final int BATCH = 8192;           // Agents picked for at once when picking in parallel.
+    private static final int BLOCK = 256;           // Agents per random number stream in a batch.
+    
+    
+    /** 
+     * Creates a new instance of AlphaRewiring for a graph of agents.
+     * Counts the shared neighbours of the agents' current links.
+    **/
+    public AlphaRewiring(AgentGraph graph, double k, double alpha, double constant, SplittableRandom random) {
+        
+        this.graph = graph;
+        this.random = random;
+        this.k = k;
+        this.alpha = alpha;
+        this.constant = constant;
+        makePropensities();
+        
+        mutualNeighbours = new MutualNeighbourTable(graph.getNumberOfAgents());
+        mutualNeighbours.build(graph);
+        
+    } // End of constructor.
+    
+    
+    
+    
+    
+    /**
+     * Sets Watt's k.
+    **/
+    public void setK(double k) {
+        this.k = k;
+        makePropensities();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets Watt's alpha.
+    **/
+    public void setAlpha(double alpha) {
+        this.alpha = alpha;
+        makePropensities();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets Watt's constant.
+    **/
+    public void setConstant(double constant) {
+        this.constant = constant;
+        makePropensities();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the distance scale for geographical connecting: the distance 
+     * over which the propensity to link falls by a factor of e. 
+     * 0, the default, ignores geography.
+    **/
+    public void setDistanceScale(double distanceScale) {
+        
+        if (distanceScale < 0) throw new IllegalArgumentException("Distance scale can't be negative");
+        this.distanceScale = distanceScale;
+        searchRadius = distanceScale * SEARCH_SCALES;
+        
+        if ((distanceScale > 0) && (places == null)) {
+            int size = graph.getNumberOfAgents();
+            xs = new int[size];
+            ys = new int[size];
+            for (int i = 0; i < size; i++) {
+                xs[i] = graph.getAgent(i).getX();
+                ys[i] = graph.getAgent(i).getY();
+            }
+            places = new SpatialIndex(xs, ys, Math.max((int)Math.ceil(searchRadius), 1));
+        }
+        
+    } // End of setDistanceScale.
+    
+    
+    
+    
+    
+    /**
+     * Sets the number of threads to pick with. 1, the default, picks one 
+     * agent at a time; more picks in batches, as described above.
+    **/
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets whether to count only new links towards the k*N/2 connections, 
+     * leaving each agent's existing neighbours out of its picks. 
+     * Default is false, counting every pick, as in Watt's model.
+    **/
+    public void setExactCounting(boolean exact) {
+        this.exact = exact;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of picks made by run.
+    **/
+    public long getAttempts() {
+        return totalAttempts;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of links made by run.
+    **/
+    public long getLinksAdded() {
+        return totalAdded;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the share of the picks made by run that made a new link. 
+     * Returns 0 if none have been made.
+    **/
+    public double getLinksAddedRatio() {
+        return (totalAttempts == 0) ? 0 : totalAdded / (double)totalAttempts;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets a listener to be told how the connecting is going, every 
+     * few thousand connections, and which can stop it.
+    **/
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Runs the small world connecting.
+     * Keeps going through the agents in a random order, linking each to one 
+     * other agent, until k*N/2 connections have been made, or the progress 
+     * listener asks for it to stop. Returns the number of connections made: 
+     * with exact counting, the links added, otherwise the picks.
+    **/
+    public int run() {
+        
+        int size = graph.getNumberOfAgents();
+        if (size < 2) return 0;
+        double target = (k*size)/2;
+        
+        int [] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        
+        ForkJoinPool pool = null;
+        
+        if (parallelism > 1) {
+            pool = new ForkJoinPool(parallelism);
+            pickers = new Picker[BATCH / BLOCK];
+            for (int i = 0; i < pickers.length; i++) pickers[i] = new Picker(null);
+            picks = new int[BATCH];
+        } else {
+            pickers = new Picker[] {new Picker(random)};
+        }
+        
+        try {
+            return connect(order, target, pool);
+        } finally {
+            if (pool != null) pool.shutdown();
+            addStats();
+            pickers = null;
+            picks = null;
+        }
+        
+    } // End of run.
+    
+    
+    
+    
+    
+    /**
+     * Does the connecting for run, picking in batches on the pool if 
+     * there is one, or one at a time if not.
+    **/
+    private int connect(int [] order, double target, ForkJoinPool pool) {
+        
+        int size = order.length;
+        long tries = 0;
+        
+        // Number of connections so we can determine small-worldness.
+        
+        int connections = 0;
+        
+        while (connections < target) {
+            
+            long addedBefore = totalAdded;
+            shuffle(order);
+            
+            for (int r = 0; r < size; r++) {
+                
+                int agent = order[r];
+                int neighbour;
+                
+                if (pool != null) {
+                    if (r % BATCH == 0) pickBatch(pool, order, r, Math.min(r + BATCH, size));
+                    neighbour = picks[r % BATCH];
+                } else {
+                    neighbour = pickers[0].pick(agent);
+                }
+                
+                // Provided the agents aren't already neighbours, link them.
+                
+                if ((neighbour >= 0) && (graph.hasArc(agent, neighbour) == false)) {
+                    link(agent, neighbour);
+                    added++;
+                    totalAdded++;
+                    if (exact) connections++;
+                } else {
+                    duplicates++;
+                }
+                
+                if (exact == false) connections++;
+                attempted++;
+                totalAttempts++;
+                
+                if (exact && (connections >= target)) return connections;
+                
+                if (++tries % REPORT_EVERY == 0) {
+                    addStats();
+                    if ((listener != null) && (listener.progress(TASK, Math.min(connections / target, 1.0)) == false)) return connections;
+                }
+                
+            } // End of looping through each agent.
+            
+            // With exact counting, stop if no agent can link to any more.
+            
+            if (exact && (totalAdded == addedBefore)) return connections;
+            
+        } // End of testing for small-worldness.
+        
+        return connections;
+        
+    } // End of connect.
+    
+    
+    
+    
+    
+    /**
+     * Picks for the agents order[start] to order[end - 1] all at once, 
+     * putting the results in picks.
+    **/
+    private void pickBatch(ForkJoinPool pool, int [] order, int start, int end) {
+        for (int i = 0; i < pickers.length; i++) pickers[i].random = random.split();
+        pool.invoke(new PickTask(order, start, start, end));
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether an agent should be left out of another's picks: 
+     * itself, and with exact counting, its neighbours.
+    **/
+    private boolean excluded(int agent, int other) {
+        return (other == agent) || (exact && graph.hasArc(agent, other));
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the geographical distance between two agents.
+    **/
+    private double distance(int a, int b) {
+        double dx = xs[a] - xs[b];
+        double dy = ys[a] - ys[b];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets how much the propensity of two agents to link is 
+     * cut by the distance between them.
+    **/
+    private double decay(int a, int b) {
+        return Math.exp(-distance(a, b) / distanceScale);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the propensity above the constant of two agents to link, given 
+     * the number of neighbours they have in common.
+    **/
+    private double extraPropensity(int neighbours) {
+        return extraPropensities[Math.min(neighbours, extraPropensities.length - 1)];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Works out the table of propensities above the constant for each number 
+     * of shared neighbours, from none up to k, beyond which the propensity is 1. 
+     * The propensities are Watt's, with some special conditions to prevent 
+     * negative numbers coming up.
+    **/
+    private void makePropensities() {
+        
+        int length = (int)Math.min(Math.max(Math.ceil(k), 1), 1 << 20) + 1;
+        extraPropensities = new double[length];
+        
+        for (int neighbours = 0; neighbours < length; neighbours++) {
+            double propensity;
+            if (neighbours == 0) {
+                propensity = constant;
+            } else if (neighbours >= k) {
+                propensity = 1;
+            } else {
+                propensity = ((Math.pow( ((((double)neighbours) - 1.0)/k), alpha))*(1.0-constant)) + constant;
+            }
+            extraPropensities[neighbours] = propensity - constant;
+        }
+        
+    } // End of makePropensities.
+    
+    
+    
+    
+    
+    /**
+     * Links two agents both ways, updating the mutual neighbour counts first.
+    **/
+    private void link(int a, int b) {
+        mutualNeighbours.linkAdded(a, b, graph);
+        graph.addLink(a, b);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds the counts so far to the SimulationStats. They're kept in 
+     * fields until now so the connecting loop doesn't touch shared counters.
+    **/
+    private void addStats() {
+        
+        long draws = 0;
+        
+        for (int i = 0; i < pickers.length; i++) {
+            draws = draws + pickers[i].draws;
+            pickers[i].draws = 0;
+        }
+        
+        SimulationStats.getStats().addConnections(attempted, duplicates, added, draws);
+        attempted = 0;
+        duplicates = 0;
+        added = 0;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Shuffles an array of agent ids.
+    **/
+    private void shuffle(int [] order) {
+        
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+        
+    }
+    
+    
+    /**
+     * Picks for a range of a batch of agents, splitting itself up 
+     * on block boundaries to run on a ForkJoinPool.
+    **/
+    private class PickTask extends RecursiveAction {
+        
+        private int [] order = null;        // Shuffled agents.
+        private int batchStart = 0;         // Position in order of the start of the batch.
+        private int start = 0;              // First position in order to do.
+        private int end = 0;                // One past the last position in order to do.
+        
+        
+        /**
+         * Creates a task picking for agents order[start] to order[end - 1].
+        **/
+        PickTask(int [] order, int batchStart, int start, int end) {
+            this.order = order;
+            this.batchStart = batchStart;
+            this.start = start;
+            this.end = end;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Splits the range in two, on a block boundary, until it's one block, 
+         * then picks for it with the block's picker.
+        **/
+        protected void compute() {
+            
+            if (end - start > BLOCK) {
+                int blocks = (end - start + BLOCK - 1) / BLOCK;
+                int middle = start + (blocks / 2) * BLOCK;
+                invokeAll(new PickTask(order, batchStart, start, middle), new PickTask(order, batchStart, middle, end));
+                return;
+            }
+            
+            Picker picker = pickers[(start - batchStart) / BLOCK];
+            for (int i = start; i < end; i++) picks[i - batchStart] = picker.pick(order[i]);
+            
+        }
+        
+    // End of class.
+    }
+    
+    
+    
+    
+    
+    /**
+     * Makes picks, with its own random numbers and working space, 
+     * so several can pick at once from the same, unchanging, tables.
+    **/
+    private class Picker {
+        
+        private SplittableRandom random = null;         // Random numbers for picking.
+        private long draws = 0;                         // Propensities worked out not yet added to the stats.
+        private int [] candidates = new int[64];        // Agents weighed in a geographical pick.
+        private double [] weights = new double[64];     // Their propensities.
+        
+        
+        /**
+         * Creates a picker using the given random numbers.
+        **/
+        Picker(SplittableRandom random) {
+            this.random = random;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Picks an agent for another to link to, Monte Carlo style.
+         * The other agents' propensities add up to the background mass, the 
+         * constant times N - 1, plus the extra propensity of those in the chooser's 
+         * row of the mutual neighbour table. A random point in this total either 
+         * falls in the background, when any other agent is equally likely, or on 
+         * one of the row's agents, so each pick costs O(r) for a row of r agents. 
+         * With exact counting the chooser's neighbours are left out of both. 
+         * Returns -1 if there's no one to pick.
+        **/
+        int pick(int agent) {
+        
+            if (distanceScale > 0) return pickNearby(agent);
+        
+            int [] rowAgents = mutualNeighbours.getRowAgents(agent);
+            int [] rowCounts = mutualNeighbours.getRowCounts(agent);
+            int size = graph.getNumberOfAgents();
+            int others = (exact) ? size - 1 - graph.getDegree(agent) : size - 1;
+            double background = constant * Math.max(others, 0);
+            double extra = 0;
+        
+            if (rowAgents != null) {
+                for (int i = 0; i < rowAgents.length; i++) {
+                    if ((rowAgents[i] >= 0) && (excluded(agent, rowAgents[i]) == false)) {
+                        extra = extra + extraPropensity(rowCounts[i]);
+                        draws++;
+                    }
+                }
+            }
+        
+            // Given these propensities pick one neighbour.
+        
+            double target = random.nextDouble() * (background + extra) - background;
+        
+            if ((target >= 0) && (extra > 0)) {
+                int last = -1;
+                for (int i = 0; i < rowAgents.length; i++) {
+                    int other = rowAgents[i];
+                    if ((other >= 0) && (excluded(agent, other) == false)) {
+                        double propensity = extraPropensity(rowCounts[i]);
+                        if (propensity > 0) {
+                            target = target - propensity;
+                            last = other;
+                            if (target < 0) return other;
+                        }
+                    }
+                }
+                return last;    // Only reached through rounding.
+            }
+        
+            return randomOther(agent);
+        
+        } // End of pick.
+        
+        
+        
+        
+        
+        /**
+         * Picks an agent for another to link to, weighting the propensities 
+         * by distance. Agents sharing neighbours with the chooser, and those 
+         * within the search radius, are weighed exactly; the rest are 
+         * represented by a random sample, each weighted up to stand for 
+         * its share of the whole population.
+        **/
+        private int pickNearby(int agent) {
+        
+            int [] rowAgents = mutualNeighbours.getRowAgents(agent);
+            int [] rowCounts = mutualNeighbours.getRowCounts(agent);
+            int size = graph.getNumberOfAgents();
+            int count = 0;
+        
+            // Agents sharing neighbours, wherever they are.
+        
+            if (rowAgents != null) {
+                for (int i = 0; i < rowAgents.length; i++) {
+                    int other = rowAgents[i];
+                    if ((other >= 0) && (rowCounts[i] > 0) && (excluded(agent, other) == false)) {
+                        count = addCandidate(count, other, (constant + extraPropensity(rowCounts[i])) * decay(agent, other));
+                    }
+                }
+            }
+        
+            // Agents nearby that share no neighbours.
+        
+            int [] near = places.find(xs[agent], ys[agent], (int)Math.ceil(searchRadius) + 1);
+        
+            for (int i = 0; i < near.length; i++) {
+                int other = near[i];
+                if ((distance(agent, other) < searchRadius) && (mutualNeighbours.get(agent, other) == 0) && (excluded(agent, other) == false)) {
+                    count = addCandidate(count, other, constant * decay(agent, other));
+                }
+            }
+        
+            // A sample of the rest, each standing in for its share of them.
+        
+            double share = (size - 1) / (double)TAIL_SAMPLES;
+        
+            for (int i = 0; i < TAIL_SAMPLES; i++) {
+                int other = random.nextInt(size - 1);
+                if (other >= agent) other++;
+                if ((distance(agent, other) >= searchRadius) && (mutualNeighbours.get(agent, other) == 0) && (excluded(agent, other) == false)) {
+                    count = addCandidate(count, other, constant * decay(agent, other) * share);
+                }
+            }
+        
+            // Given these propensities pick one neighbour.
+        
+            double total = 0;
+            for (int i = 0; i < count; i++) total = total + weights[i];
+        
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < count; i++) {
+                    target = target - weights[i];
+                    if ((target < 0) && (weights[i] > 0)) return candidates[i];
+                }
+                for (int i = count - 1; i >= 0; i--) {
+                    if (weights[i] > 0) return candidates[i];     // Only reached through rounding.
+                }
+            }
+        
+            // Everyone is too far away to weigh anything; pick anyone.
+        
+            return randomOther(agent);
+        
+        } // End of pickNearby.
+        
+        
+        
+        
+        
+        /**
+         * Picks any agent but the chooser at random, all equally likely. 
+         * With exact counting the chooser's neighbours are left out, and 
+         * -1 is returned if it's already linked to everyone.
+        **/
+        private int randomOther(int agent) {
+        
+            int size = graph.getNumberOfAgents();
+        
+            for (int tries = 0; tries < 64; tries++) {
+                int other = random.nextInt(size - 1);
+                if (other >= agent) other++;
+                if (excluded(agent, other) == false) return other;
+            }
+        
+            // Nearly everyone is a neighbour; look through them all from a random start.
+        
+            int start = random.nextInt(size);
+        
+            for (int i = 0; i < size; i++) {
+                int other = (start + i) % size;
+                if (excluded(agent, other) == false) return other;
+            }
+            return -1;
+        
+        } // End of randomOther.
+        
+        
+        
+        
+        
+        /**
+         * Adds an agent and its propensity to the candidates for a 
+         * geographical pick. Returns the new number of candidates.
+        **/
+        private int addCandidate(int count, int other, double weight) {
+        
+            if (count == candidates.length) {
+                candidates = Arrays.copyOf(candidates, count * 2);
+                weights = Arrays.copyOf(weights, count * 2);
+            }
+            candidates[count] = other;
+            weights[count] = weight;
+            draws++;
+            return count + 1;
+        
+        }
+        
+    // End of class.
+    }
+    
+    
+// End of class.
+}
@@ -0,0 +1,389 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Saves a run as it goes, so that it can be picked up again if it stops.<P>
+ * Every so many iterations the whole world is written as a snapshot (see 
+ * AgentSnapshot); after each of the others just what changed is added to 
+ * the end of a journal: the agents whose values changed, with their new 
+ * values, and the changes to the links, both as recorded by the AgentGraph 
+ * (see AgentGraph.takeChangedValues and takeChanges). The agents marked 
+ * as changed are those whose value was different after their update, as 
+ * run by SmallWorldEngine or UpdateTask, so writing an iteration out costs 
+ * about as much as what changed in it, not the size of the world.<P>
+ * The files are named after a prefix and the iteration the snapshot was 
+ * taken at, e.g. run.000000500.sws and run.000000500.journal, the journal 
+ * holding the iterations after 500. A snapshot is written under another 
+ * name and then renamed, and older files are only deleted once the new 
+ * snapshot is in place, so there is always a whole snapshot to go back to. 
+ * The journal is:
+ * <UL>
+ * <LI>A header: the int MAGIC, the int VERSION, the iteration of the 
+ * snapshot, and the number of agents.</LI>
+ * <LI>A record per iteration: the int length of the body, the body, and 
+ * the CRC32 of the body as an int. The body is the iteration, the number 
+ * of values that changed, each as the agent's id and the value, then the 
+ * number of ints of link changes and the ints themselves.</LI>
+ * </UL>
+ * Each record is handed to the OS once it's whole, so a run that's killed 
+ * loses at most the iteration it was in; a record cut short, or whose CRC 
+ * doesn't match, ends the journal when resuming.<P>
+ * Only the values and links are journalled, so agents whose update 
+ * changes anything else (their position, say) won't have that change 
+ * until the next snapshot; nor will a value changed other than by its 
+ * own agent's update (unless marked with AgentGraph.valuesChanged). Resuming gets the world back as it was, 
+ * but not the random numbers, so a resumed run continues from 
+ * there with different numbers from those it would have had.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class CheckpointJournal {
+    
+    public static final int MAGIC = 0x53574a31;             // "SWJ1", marks a journal.
+    public static final int VERSION = 1;                    // Layout written by this class.
+    public static final String EXTENSION = ".journal";      // File ending of journals.
+    
+    private File prefix = null;                             // Start of the files' paths.
+    private int snapshotEvery = 100;                        // Iterations between snapshots.
+    private int iteration = 0;                              // Iterations the world has been run for.
+    private AgentGraph graph = null;                        // Agents being saved.
+    private DataOutputStream journal = null;                // Journal being added to.
+    private File journalFile = null;                        // Where journal is going.
+    private ByteArrayOutputStream body = new ByteArrayOutputStream();  // Record being made.
+    private CRC32 crc = new CRC32();                        // Checksum of each record.
+    
+    
+    
+    
+    
+    /**
+     * Constructor, taking the start of the files' paths, 
+     * and the number of iterations between snapshots.
+    **/
+    public CheckpointJournal(File prefix, int snapshotEvery) {
+        
+        if (snapshotEvery < 1) throw new IllegalArgumentException("Iterations between snapshots must be at least 1");
+        
+        this.prefix = prefix;
+        this.snapshotEvery = snapshotEvery;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether there's a snapshot to resume from.
+    **/
+    public boolean exists() {
+        return latestSnapshot() >= 0;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of iterations the world has been run for, 
+     * counting those before a resume.
+    **/
+    public int getIteration() {
+        return iteration;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the latest snapshot and makes the changes in its journal again, 
+     * giving the agents as they were after the last iteration saved. 
+     * getIteration then gives that iteration. If the snapshot holds no 
+     * agents the journal isn't read, and the iteration is the snapshot's.
+    **/
+    public Vector resume() throws IOException {
+        
+        int latest = latestSnapshot();
+        if (latest < 0) throw new FileNotFoundException("No checkpoint for " + prefix);
+        
+        Vector agents = new AgentSnapshot().read(file(latest, AgentSnapshot.EXTENSION));
+        iteration = latest;
+        
+        // An empty world has nothing to change, and no graph to change it in.
+        
+        File journalIn = file(latest, EXTENSION);
+        if ((journalIn.exists() == false) || agents.isEmpty()) return agents;
+        
+        AgentGraph resumed = ((Agent)agents.elementAt(0)).getGraph();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalIn)));
+        
+        try {
+            
+            if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) throw new IOException(journalIn + " isn't a journal");
+            if (in.readInt() != latest) throw new IOException(journalIn + " doesn't follow its snapshot");
+            if (in.readInt() != resumed.getNumberOfAgents()) throw new IOException(journalIn + " is for a different number of agents");
+            
+            byte [] record = new byte[1024];
+            int [] changes = new int[64];
+            
+            while (true) {
+                
+                // Read a record, stopping at the first that isn't whole.
+                
+                int length = in.readInt();
+                if (length < 12) break;
+                if (length > record.length) record = new byte[Math.max(length, record.length * 2)];
+                in.readFully(record, 0, length);
+                crc.reset();
+                crc.update(record, 0, length);
+                if (in.readInt() != (int)crc.getValue()) break;
+                
+                // Make its changes.
+                
+                DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record, 0, length));
+                int recordIteration = fields.readInt();
+                int changed = fields.readInt();
+                for (int i = 0; i < changed; i++) {
+                    int id = fields.readInt();
+                    resumed.getAgent(id).setValue(fields.readDouble());
+                }
+                
+                int ints = fields.readInt();
+                if (ints > changes.length) changes = new int[ints];
+                for (int i = 0; i < ints; i++) changes[i] = fields.readInt();
+                resumed.applyChanges(changes, ints);
+                
+                iteration = recordIteration;
+                
+            }
+            
+        } catch (EOFException eofe) {
+            // The run stopped part way through writing a record.
+        } finally {
+            in.close();
+        }
+        
+        return agents;
+        
+    } // End of resume.
+    
+    
+    
+    
+    
+    /**
+     * Starts saving the agents in a graph, writing a snapshot of them as 
+     * they are now. The iteration counts on from the last resume, if any.
+    **/
+    public void start(AgentGraph graph) throws IOException {
+        
+        this.graph = graph;
+        graph.setRecordingChanges(true);
+        snapshot();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Saves the iteration just run: writes a snapshot if it's 
+     * time for one, otherwise adds what changed to the journal.
+    **/
+    public void iterationDone() throws IOException {
+        
+        iteration++;
+        
+        if (iteration % snapshotEvery == 0) {
+            snapshot();
+            return;
+        }
+        
+        // Make the record: the values that changed, then the link changes.
+        
+        body.reset();
+        DataOutputStream fields = new DataOutputStream(body);
+        fields.writeInt(iteration);
+        
+        int [] changed = graph.takeChangedValues();
+        fields.writeInt(changed.length);
+        for (int i = 0; i < changed.length; i++) {
+            fields.writeInt(changed[i]);
+            fields.writeDouble(graph.getAgent(changed[i]).getValue());
+        }
+        
+        int [] changes = graph.takeChanges();
+        fields.writeInt(changes.length);
+        for (int i = 0; i < changes.length; i++) fields.writeInt(changes[i]);
+        fields.flush();
+        
+        // Add it to the journal in one go, with its length and checksum.
+        
+        crc.reset();
+        crc.update(body.toByteArray(), 0, body.size());
+        journal.writeInt(body.size());
+        body.writeTo(journal);
+        journal.writeInt((int)crc.getValue());
+        journal.flush();
+        
+    } // End of iterationDone.
+    
+    
+    
+    
+    
+    /**
+     * Stops saving, closing the journal. The files are left, 
+     * so the run can be resumed or carried on later.
+    **/
+    public void close() throws IOException {
+        
+        if (graph != null) graph.setRecordingChanges(false);
+        graph = null;
+        
+        if (journal != null) journal.close();
+        journal = null;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes a snapshot of the whole world at the current iteration, 
+     * starts a new journal after it, and deletes the older files.
+    **/
+    private void snapshot() throws IOException {
+        
+        if (journal != null) journal.close();
+        journal = null;
+        
+        // Write the snapshot under another name, then rename it, 
+        // so the latest snapshot with the proper name is always whole.
+        
+        int size = graph.getNumberOfAgents();
+        Vector agents = new Vector(size);
+        for (int i = 0; i < size; i++) agents.addElement(graph.getAgent(i));
+        graph.takeChanges();
+        graph.takeChangedValues();
+        
+        File snapshotFile = file(iteration, AgentSnapshot.EXTENSION);
+        File partFile = new File(snapshotFile.getPath() + ".part");
+        new AgentSnapshot().write(agents, partFile);
+        Files.move(partFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        // Start the journal.
+        
+        journalFile = file(iteration, EXTENSION);
+        journal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile), 1 << 16));
+        journal.writeInt(MAGIC);
+        journal.writeInt(VERSION);
+        journal.writeInt(iteration);
+        journal.writeInt(size);
+        journal.flush();
+        
+        // Tidy up what came before.
+        
+        File [] files = listFiles();
+        for (int i = 0; i < files.length; i++) {
+            int taken = iterationOf(files[i]);
+            if ((taken >= 0) && (taken != iteration)) files[i].delete();
+        }
+        
+    } // End of snapshot.
+    
+    
+    
+    
+    
+    /**
+     * Gets the iteration of the latest snapshot, or -1 if there are none.
+    **/
+    private int latestSnapshot() {
+        
+        int latest = -1;
+        File [] files = listFiles();
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().endsWith(AgentSnapshot.EXTENSION)) latest = Math.max(latest, iterationOf(files[i]));
+        }
+        return latest;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the files in the prefix's directory.
+    **/
+    private File [] listFiles() {
+        
+        File directory = prefix.getAbsoluteFile().getParentFile();
+        File [] files = (directory == null) ? null : directory.listFiles();
+        return (files == null) ? new File[0] : files;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the iteration in the name of one of this journal's snapshots 
+     * or journals, or -1 if the file isn't one of them.
+    **/
+    private int iterationOf(File file) {
+        
+        String name = file.getName();
+        String start = prefix.getName() + ".";
+        String end = (name.endsWith(EXTENSION)) ? EXTENSION : AgentSnapshot.EXTENSION;
+        
+        if ((name.startsWith(start) == false) || (name.endsWith(end) == false)) return -1;
+        
+        String digits = name.substring(start.length(), name.length() - end.length());
+        if ((digits.length() != 9) || (digits.matches("[0-9]+") == false)) return -1;
+        return Integer.parseInt(digits);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the file for the snapshot or journal at an iteration.
+    **/
+    private File file(int iteration, String extension) {
+        return new File(prefix.getPath() + "." + String.format("%09d", iteration) + extension);
+    }
+
+
+
+
+
+} // End of class.
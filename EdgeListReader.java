@@ -0,0 +1,587 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Reads agents and their links from plain text edge lists, adjacency lists 
+ * and CSV edge tables, as networks from elsewhere usually come.<P>
+ * Each line is read as a list of agent names:
+ * <UL>
+ * <LI>In edge and adjacency lists, names are split by spaces or tabs. The 
+ * first agent on a line is linked to each of the others, so "a b" is an 
+ * edge and "a b c d" links a to b, c and d. A name on its own adds an agent 
+ * with no links.</LI>
+ * <LI>In CSV files (those ending .csv) each comma ends one field, so empty 
+ * fields keep their column. Fields may be in double quotes, with "" for a 
+ * quote inside them, though not run over lines; blanks around fields not 
+ * in quotes are dropped. Only the first two columns, source and target, are 
+ * used, so the weights and types in tables such as Gephi's are skipped. 
+ * Empty names are ignored, so a row with just a source or a target adds 
+ * that agent with no links.</LI>
+ * </UL>
+ * Blank lines, and lines starting with # or %, are skipped, as is the first 
+ * other line if it starts with Source, Src or From (in any case). Links are made both 
+ * ways, and links repeated, or from an agent to itself, are dropped. Agents 
+ * are named by the names in the file, and are given ids, and their place in 
+ * the Vector, in the order the names first appear. Their positions are left 
+ * at -1 for SmallWorldEngine.setAgents to fill in.<P>
+ * The file is mapped into memory with a FileChannel and cut into chunks at 
+ * line ends, which are parsed in parallel on a ForkJoinPool, straight from 
+ * the bytes. Names are given ids as they are met through a ConcurrentHashMap 
+ * shared by the chunks; as which chunk meets a name first depends on the 
+ * threads, the ids are then put in order of first appearance in one pass. The 
+ * links go straight into CSR rows in an AgentGraph (see makeGraph), without 
+ * neighbour Vectors or name lookups.<P>
+ * Files should be UTF-8 (or ASCII).<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class EdgeListReader {
+    
+    public static final String [] EXTENSIONS = {".edges", ".edgelist", ".el", ".adj", ".adjlist", ".tsv", ".txt", ".csv"};  // File endings read.
+    
+    private static final String [] HEADERS = {"source", "src", "from"};    // First names marking a header line.
+    private static final long CHUNK = 1 << 24;          // Usual bytes per chunk.
+    private static final long MAX_CHUNK = 1 << 26;      // Most bytes per chunk, bar long lines.
+    
+    private int parallelism = Runtime.getRuntime().availableProcessors();  // Threads to parse with.
+    private boolean csv = false;                        // If true, the file is a CSV edge table.
+    private ConcurrentHashMap names = null;             // Ids, as Integers, by name, while reading.
+    private AtomicInteger nextId = null;                // Next id to give a name while reading.
+    
+    
+    /** 
+     * Creates a new instance of EdgeListReader.
+    **/
+    public EdgeListReader() {
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a file's name ends with one of the EXTENSIONS.
+    **/
+    public static boolean isEdgeList(File file) {
+        
+        String name = file.getName().toLowerCase();
+        
+        for (int i = 0; i < EXTENSIONS.length; i++) {
+            if (name.endsWith(EXTENSIONS[i])) return true;
+        }
+        return false;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the number of threads to parse with.
+     * Default is the number of processors.
+    **/
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the agents from a file, linked up in an AgentGraph.
+     * Files ending .csv are read as CSV edge tables, anything else as 
+     * an edge or adjacency list.
+    **/
+    public Vector readAgents(File file) throws IOException {
+        
+        csv = file.getName().toLowerCase().endsWith(".csv");
+        nextId = new AtomicInteger();
+        
+        FileChannel channel = new FileInputStream(file).getChannel();
+        
+        // Size the table for a name every few dozen bytes, so it rarely grows while being shared.
+        
+        names = new ConcurrentHashMap((int)Math.min(Math.max(channel.size() / 32, 16), 1 << 24), 0.75f, parallelism);
+        Chunk [] chunks = null;
+        
+        try {
+            
+            chunks = cut(channel);
+            
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new ParseTask(channel, chunks, 0, chunks.length));
+            } catch (UncheckedIOException uioe) {
+                throw uioe.getCause();
+            } finally {
+                pool.shutdown();
+            }
+            
+        } finally {
+            channel.close();
+        }
+        
+        // Put the ids in order of first appearance, going through 
+        // the chunks in file order, and renumber the links.
+        
+        int [] ids = new int[nextId.get()];
+        Arrays.fill(ids, -1);
+        int size = 0;
+        
+        for (int c = 0; c < chunks.length; c++) {
+            int [] ends = chunks[c].ends;
+            for (int i = 0; i < chunks[c].length; i++) {
+                if (ids[ends[i]] == -1) ids[ends[i]] = size++;
+                ends[i] = ids[ends[i]];
+            }
+        }
+        
+        // Make the agents, named from the table.
+        
+        Agent [] agents = new Agent[size];
+        
+        for (Iterator i = names.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry entry = (Map.Entry)i.next();
+            int id = ids[((Integer)entry.getValue()).intValue()];
+            if (id == -1) continue;     // Given an id by a chunk that lost the race to add it.
+            agents[id] = new Agent();
+            agents[id].setName((String)entry.getKey());
+        }
+        names = null;
+        
+        int [][] ends = new int[chunks.length][];
+        int [] lengths = new int[chunks.length];
+        
+        for (int c = 0; c < chunks.length; c++) {
+            ends[c] = chunks[c].ends;
+            lengths[c] = chunks[c].length;
+        }
+        
+        makeGraph(agents, ends, lengths);
+        return new Vector(Arrays.asList(agents));
+        
+    } // End of readAgents.
+    
+    
+    
+    
+    
+    /**
+     * Links agents both ways in a new AgentGraph, given the ends of the 
+     * links as pairs of ids, in one or more arrays. Links repeated, or 
+     * from an agent to itself, are dropped, and each agent's neighbours 
+     * are in id order. Also used by GraphMLReader.
+    **/
+    static AgentGraph makeGraph(Agent [] agents, int [][] ends, int [] lengths) {
+        
+        int size = agents.length;
+        
+        // Count both ends of each link, and turn the counts into row starts.
+        
+        int [] rowStarts = new int[size + 1];
+        
+        for (int c = 0; c < ends.length; c++) {
+            for (int i = 0; i < lengths[c]; i = i + 2) {
+                if (ends[c][i] == ends[c][i + 1]) continue;
+                rowStarts[ends[c][i] + 1]++;
+                rowStarts[ends[c][i + 1] + 1]++;
+            }
+        }
+        
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total = total + rowStarts[i + 1];
+            if (total > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too many links for one AgentGraph");
+            rowStarts[i + 1] = (int)total;
+        }
+        
+        // Drop the links into the rows.
+        
+        int [] targets = new int[Math.max((int)total, 16)];
+        int [] filled = Arrays.copyOf(rowStarts, size);
+        
+        for (int c = 0; c < ends.length; c++) {
+            for (int i = 0; i < lengths[c]; i = i + 2) {
+                int a = ends[c][i];
+                int b = ends[c][i + 1];
+                if (a == b) continue;
+                targets[filled[a]++] = b;
+                targets[filled[b]++] = a;
+            }
+        }
+        
+        // Sort each row and squeeze out repeats, then close up the gaps left.
+        
+        int position = 0;
+        
+        for (int i = 0; i < size; i++) {
+            
+            int start = rowStarts[i];
+            int end = rowStarts[i + 1];
+            Arrays.sort(targets, start, end);
+            rowStarts[i] = position;
+            
+            for (int j = start; j < end; j++) {
+                if ((j == start) || (targets[j] != targets[j - 1])) targets[position++] = targets[j];
+            }
+            
+        }
+        rowStarts[size] = position;
+        
+        return new AgentGraph(agents, rowStarts, targets);
+        
+    } // End of makeGraph.
+    
+    
+    
+    
+    
+    /**
+     * Cuts a file into chunks that start at the start of lines.
+    **/
+    private Chunk [] cut(FileChannel channel) throws IOException {
+        
+        long fileSize = channel.size();
+        long chunkSize = Math.min(Math.max(CHUNK, fileSize / (parallelism * 4L)), MAX_CHUNK);
+        int count = (int)Math.max((fileSize + chunkSize - 1) / chunkSize, 1);
+        
+        Vector chunks = new Vector();
+        long start = 0;
+        
+        for (int i = 1; i <= count; i++) {
+            long end = (i == count) ? fileSize : lineStart(channel, Math.max(i * chunkSize, start));
+            if (end > start) {
+                if (end - start > Integer.MAX_VALUE) throw new IOException("Line too long in edge list");
+                chunks.add(new Chunk(start, end));
+            }
+            start = end;
+        }
+        if (chunks.size() == 0) chunks.add(new Chunk(0, 0));
+        
+        return (Chunk [])chunks.toArray(new Chunk[chunks.size()]);
+        
+    } // End of cut.
+    
+    
+    
+    
+    
+    /**
+     * Finds the start of the first line starting at or after a position.
+    **/
+    private static long lineStart(FileChannel channel, long position) throws IOException {
+        
+        if (position == 0) return 0;
+        
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long at = position - 1;     // Check the byte before, in case the position is just after a line end.
+        
+        while (at < channel.size()) {
+            buffer.clear();
+            int read = channel.read(buffer, at);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return at + i + 1;
+            }
+            at = at + read;
+        }
+        return channel.size();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Parses a chunk of the file, putting the ends of its links in the chunk. 
+     * An agent on its own on a line is put in as a link to itself, so it is 
+     * still given an id in order, and then dropped by makeGraph.
+    **/
+    private void parse(FileChannel channel, Chunk chunk) throws IOException {
+        
+        // Copy the mapped chunk out in one go, as reading bytes one by one from an array is quicker.
+        
+        byte [] bytes = new byte[(int)(chunk.end - chunk.start)];
+        channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, bytes.length).get(bytes);
+        int limit = bytes.length;
+        int position = 0;
+        byte [] token = new byte[64];
+        ArrayList fields = new ArrayList();
+        boolean headerAllowed = (chunk.start == 0);
+        
+        while (position < limit) {
+            
+            // Skip blanks at the start of the line, and comment lines.
+            
+            while ((position < limit) && isBlank(bytes[position])) position++;
+            
+            if ((position < limit) && ((bytes[position] == '#') || (bytes[position] == '%'))) {
+                while ((position < limit) && (bytes[position] != '\n')) position++;
+                position++;
+                continue;
+            }
+            
+            // Read the line's names.
+            
+            fields.clear();
+            
+            while ((position < limit) && (bytes[position] != '\n')) {
+                
+                int length = 0;
+                
+                if (csv) {
+                    
+                    // One field, ended by the next comma, so empty fields keep their column.
+                    
+                    while ((position < limit) && isBlank(bytes[position])) position++;
+                    
+                    if ((position < limit) && (bytes[position] == '"')) {
+                        
+                        // Quoted, with "" for a quote. Anything after the closing quote is skipped.
+                        
+                        position++;
+                        while ((position < limit) && (bytes[position] != '\n')) {
+                            byte b = bytes[position++];
+                            if (b == '"') {
+                                if ((position < limit) && (bytes[position] == '"')) {
+                                    position++;
+                                } else {
+                                    break;
+                                }
+                            }
+                            if (length == token.length) token = Arrays.copyOf(token, length * 2);
+                            token[length++] = b;
+                        }
+                        while ((position < limit) && (bytes[position] != ',') && (bytes[position] != '\n')) position++;
+                        
+                    } else {
+                        
+                        while ((position < limit) && (bytes[position] != ',') && (bytes[position] != '\n')) {
+                            if (length == token.length) token = Arrays.copyOf(token, length * 2);
+                            token[length++] = bytes[position++];
+                        }
+                        while ((length > 0) && isBlank(token[length - 1])) length--;
+                        
+                    }
+                    
+                    if (fields.size() < 2) fields.add(new String(token, 0, length, StandardCharsets.UTF_8));
+                    if ((position < limit) && (bytes[position] == ',')) position++;
+                    
+                } else {
+                    
+                    // Names split by any run of blanks.
+                    
+                    while ((position < limit) && (bytes[position] != '\n') && (isBlank(bytes[position]) == false)) {
+                        if (length == token.length) token = Arrays.copyOf(token, length * 2);
+                        token[length++] = bytes[position++];
+                    }
+                    if (length > 0) fields.add(new String(token, 0, length, StandardCharsets.UTF_8));
+                    while ((position < limit) && isBlank(bytes[position])) position++;
+                    
+                }
+                
+            } // End of line.
+            
+            position++;
+            
+            if (fields.isEmpty()) continue;
+            
+            // The first line with anything on it may be a header.
+            
+            if (headerAllowed) {
+                headerAllowed = false;
+                if (isHeader((String)fields.get(0))) continue;
+            }
+            
+            // Link the first name to the others, ignoring empty ones.
+            
+            int first = -1;
+            boolean linked = false;
+            
+            for (int i = 0; i < fields.size(); i++) {
+                String name = (String)fields.get(i);
+                if (name.length() == 0) continue;
+                int id = id(name);
+                if (first < 0) {
+                    first = id;
+                } else {
+                    chunk.add(first, id);
+                    linked = true;
+                }
+            }
+            
+            if ((first >= 0) && (linked == false)) chunk.add(first, first);
+            
+        } // End of chunk.
+        
+    } // End of parse.
+    
+    
+    
+    
+    
+    /**
+     * Gets the id for a name, giving it a new one if it hasn't been met.
+    **/
+    private int id(String name) {
+        
+        Integer id = (Integer)names.get(name);
+        
+        if (id == null) {
+            Integer fresh = Integer.valueOf(nextId.getAndIncrement());
+            id = (Integer)names.putIfAbsent(name, fresh);
+            if (id == null) id = fresh;
+        }
+        return id.intValue();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a byte is a space, tab or carriage return.
+    **/
+    private static boolean isBlank(byte b) {
+        return (b == ' ') || (b == '\t') || (b == '\r');
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether the first name on the first line with anything on it 
+     * marks it as a header.
+    **/
+    private static boolean isHeader(String name) {
+        
+        for (int i = 0; i < HEADERS.length; i++) {
+            if (name.equalsIgnoreCase(HEADERS[i])) return true;
+        }
+        return false;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * A part of the file, and the ends of the links read from it.
+    **/
+    private static class Chunk {
+        
+        private long start = 0;                 // Position of the first byte.
+        private long end = 0;                   // Position after the last byte.
+        private int [] ends = new int[64];      // Ids at the ends of each link, in pairs.
+        private int length = 0;                 // Used part of ends.
+        
+        
+        /**
+         * Creates a chunk from start to end - 1.
+        **/
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Adds a link.
+        **/
+        void add(int a, int b) {
+            if (length + 2 > ends.length) ends = Arrays.copyOf(ends, (int)Math.min((long)ends.length * 2, Integer.MAX_VALUE - 8));
+            ends[length++] = a;
+            ends[length++] = b;
+        }
+    
+    // End of class.
+    }
+    
+    
+    
+    
+    
+    /**
+     * Parses a range of chunks, splitting itself up to run on a ForkJoinPool.
+    **/
+    private class ParseTask extends RecursiveAction {
+        
+        private FileChannel channel = null;     // File being read.
+        private Chunk [] chunks = null;         // All the chunks.
+        private int start = 0;                  // First chunk to do.
+        private int end = 0;                    // One past the last chunk to do.
+        
+        
+        /**
+         * Creates a task parsing chunks start to end - 1.
+        **/
+        ParseTask(FileChannel channel, Chunk [] chunks, int start, int end) {
+            this.channel = channel;
+            this.chunks = chunks;
+            this.start = start;
+            this.end = end;
+        }
+        
+        
+        
+        
+        
+        /**
+         * Splits the range in two until it's one chunk, then parses it.
+        **/
+        protected void compute() {
+            
+            if (end - start > 1) {
+                int middle = (start + end) / 2;
+                invokeAll(new ParseTask(channel, chunks, start, middle), new ParseTask(channel, chunks, middle, end));
+                return;
+            }
+            
+            try {
+                parse(channel, chunks[start]);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+            
+        }
+    
+    // End of class.
+    }
+
+
+// End of class.
+}
@@ -27,10 +27,27 @@ import java.util.*;
  * Simple class to encapsulate the drawing of images, agents, and connections.
  * The class starts off as an empty canvas, you can then add images and agents 
  * to it. Lines are drawn between agents and their network neighbours.<P>
+ * Drawing is done into an off-screen image which is kept and copied to the 
+ * screen on each paint, so exposing or moving the window doesn't draw the 
+ * agents again. The image is redrawn when the agents, view, colours or 
+ * size change, or when their AgentGraph's links change. Anything else that 
+ * changes what should be shown, such as the agents' values, should be 
+ * followed by a call to agentsChanged.<P>
+ * Clicked agents are found with a SpatialIndex for each view, made when 
+ * first clicked after the agents change.<P>
+ * While another thread changes the agents, the display can be held (see 
+ * setHold) so that it only draws them when told to with redraw.<P>
+ * The mouse wheel zooms in and out around the mouse. When more than 
+ * LOD_LINKS links cross the screen they can't be made out, so rather 
+ * than drawing them all they're bundled on a coarse grid and drawn as a 
+ * heatmap: links within each cell are shaded into the cell, and links 
+ * between cells as one line per pair of cells, shaded by how many there 
+ * are (see drawBundles). Zooming in far enough that fewer links cross the 
+ * screen draws them exactly.<P>
  * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
- * @version 0.13
+ * @version 0.16
 **/
-public class GUICanvas extends Canvas implements MouseListener {
+public class GUICanvas extends Canvas implements MouseListener, MouseWheelListener {
 
     private Image displayImage = null;      // Image to display.
     private Vector agents = null;	    // Agents to display.
@@ -39,16 +56,50 @@ public class GUICanvas extends Canvas implements MouseListener {
     private Color lineColor = Color.gray;   // Colour for lines.
     private int colourMode = 0;             // Colour scheme to use for each agent. 0 = scrollbars,
                                             // 1 = using values, 2 = random.
+    private BufferedImage cache = null;     // Everything drawn, ready to copy to the screen.
+    private boolean cacheValid = false;     // False if the cache needs drawing again.
+    private AgentGraph cachedGraph = null;  // Graph the cache was drawn from.
+    private int cachedModCount = 0;         // Graph's count of changes when the cache was drawn.
+    private boolean hold = false;           // If true, just show the cache, as the agents are being changed.
+    private Color [] agentColours = null;   // Palette for agents in the current scheme.
+    private Color [] lineColours = null;    // Palette for lines in the current scheme.
+    private Color [] randomAgentColours = null; // Palettes for colour scheme 2, made when first needed.
+    private Color [] randomLineColours = null;
+    private int [] randomHues = null;       // Each agent's place in the scheme 2 palettes, picked when first needed.
+    
+    private Agent [] indexedAgents = null;  // Agents in the picking indices, null if they need making again.
+    private SpatialIndex realIndex = null;  // Where agents are in the real geography, made when first needed.
+    private SpatialIndex graphIndex = null; // Where agents are drawn in graph space, made when first needed.
+    private int graphIndexShift = 0;        // Offset graphIndex was made with.
+    private double zoom = 1.0;              // Magnification, 1 showing the whole view.
+    private double viewX = 0;               // Zoomed position shown at the left of the canvas.
+    private double viewY = 0;               // Zoomed position shown at the top of the canvas.
+    private int [] bundles = null;          // Links between each pair of cells, when drawing bundles.
+    private int [] heat = null;             // Links within each cell, when drawing bundles.
+    
+    private static final int PICK_CELL = 8; // Cell size for the picking indices, in pixels.
+    private static final int HUES = 256;    // Number of random colours.
+    private static final int LOD_LINKS = 50000;     // Most links drawn one by one; past this they're bundled.
+    private static final int BUNDLE_CELLS = 24;     // Cells across and down the screen when bundling links.
+    private static final double ZOOM_STEP = 1.25;   // Zoom for each click of the mouse wheel.
+    private static final double MAX_ZOOM = 1024;    // Furthest the view can be zoomed in.
+    private static final int SCREEN_LIMIT = 1 << 20;    // Furthest off the screen things are drawn to.
+    private static final Color [] GREYS = new Color[236];   // Palette for colour scheme 1.
+    
+    static {
+        for (int i = 0; i < GREYS.length; i++) GREYS[i] = new Color(i, i, i);
+    }
     
     
     /**
      * Simple constructor.
      * Just calls the standard Canvas constructor and adds 
-     * itself as a mouse listener.
+     * itself as a mouse and mouse wheel listener.
     **/
     public GUICanvas() {
 		super();
                 addMouseListener(this);
+                addMouseWheelListener(this);
     }
 
     
@@ -62,6 +113,7 @@ public class GUICanvas extends Canvas implements MouseListener {
     **/
     public void setDisplayImage (Image dispImage) {
 		displayImage = dispImage;
+		cacheValid = false;
     }
 
     
@@ -87,6 +139,9 @@ public class GUICanvas extends Canvas implements MouseListener {
     **/
     public void setAgents (Vector v) {
 		agents = v;
+		cacheValid = false;
+		indexedAgents = null;
+		randomHues = null;
     }
 
     
@@ -110,6 +165,7 @@ public class GUICanvas extends Canvas implements MouseListener {
     **/
     public void setReal (boolean b) {
 	real = b;
+	cacheValid = false;
     }
     
     
@@ -123,6 +179,7 @@ public class GUICanvas extends Canvas implements MouseListener {
     **/
     public void setAgentColor(Color c) {
 	agentColor = c;
+	cacheValid = false;
     }
     
     
@@ -136,6 +193,7 @@ public class GUICanvas extends Canvas implements MouseListener {
     **/
     public void setLineColor(Color c) {
 	lineColor = c;
+	cacheValid = false;
     } 
     
     
@@ -144,10 +202,13 @@ public class GUICanvas extends Canvas implements MouseListener {
     
     /**
      * Colour scheme to use for each agent. 
-     * 0 = scrollbars, 1 = using values, 2 = random.
+     * 0 = scrollbars, 1 = using values, 2 = random. 
+     * Picking random colours gives each agent a new one.
     **/
     public void setColours(int mode) {
 	colourMode = mode;
+	cacheValid = false;
+	if (mode == 2) randomHues = null;
     }
     
     
@@ -158,124 +219,517 @@ public class GUICanvas extends Canvas implements MouseListener {
      * Paints the image etc.
      * If the image has been set with setDisplayImage, it is painted.
      * If the agents have been set, they are painted plus their links to 
-     * network neighbours.
+     * network neighbours.<P>
+     * All this is drawn into an off-screen image, which is then just copied 
+     * to the screen on later paints until something changes (see agentsChanged).
     **/ 
     public void paint (Graphics g) {
-		
-		
-        // If there's an image, paint it.
         
-	if (displayImage != null) {
-            g.drawImage(displayImage, 0, 0, this);
-	} 
-	
+        if (hold == false) updateCache(false);
+        if (cache != null) g.drawImage(cache, 0, 0, this);
+        
+    } // End of paint.
+    
+    
+    
+    
+    
+    /**
+     * Draws everything into the off-screen image again if anything has changed, 
+     * or if forced to.
+    **/
+    private void updateCache (boolean force) {
+        
+        int width = Math.max(getWidth(), 1);
+        int height = Math.max(getHeight(), 1);
+        AgentGraph graph = findGraph();
+        int modCount = (graph == null) ? 0 : graph.getModCount();
         
-	
-        // If there are agents, paint them.
+        if ((cache == null) || (cache.getWidth() != width) || (cache.getHeight() != height)) {
+            cache = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            cacheValid = false;
+        }
         
-	if (agents != null) {
-	    
-            // Calculate the value range of the Agents for colour stretching.
+        if (force || (cacheValid == false) || (graph != cachedGraph) || (modCount != cachedModCount)) {
+            SimulationStats.Timing timing = SimulationStats.getStats().begin(SimulationStats.PAINT);
+            Graphics cacheGraphics = cache.getGraphics();
+            try {
+                render(cacheGraphics, width, height, graph);
+            } finally {
+                cacheGraphics.dispose();
+                timing.end();
+            }
+            cachedGraph = graph;
+            cachedModCount = modCount;
+            cacheValid = true;
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Paints the cached image straight over the old one.
+     * The standard update clears the canvas first, which flickers.
+    **/
+    public void update (Graphics g) {
+        paint(g);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Tells the canvas the agents' values or positions have changed, 
+     * so it draws them again at the next repaint. Links added or removed 
+     * through an AgentGraph are noticed without this.
+    **/
+    public void agentsChanged() {
+        cacheValid = false;
+        indexedAgents = null;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Holds the display while the agents are being changed by another thread. 
+     * While held, paints just show the last drawing and clicks are ignored, 
+     * so nothing reads the agents part way through a change. Use redraw to 
+     * draw them at points where they're safe to read.
+    **/
+    public void setHold(boolean hold) {
+        this.hold = hold;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Draws the agents into the off-screen image now, even if the display 
+     * is held; call repaint to show it. Only call this while the agents 
+     * aren't being changed.
+    **/
+    public void redraw() {
+        indexedAgents = null;
+        updateCache(true);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Draws the image, agents and links into the off-screen image.
+    **/
+    private void render (Graphics g, int width, int height, AgentGraph graph) {
+        
+        g.setColor((getBackground() == null) ? Color.white : getBackground());
+        g.fillRect(0, 0, width, height);
+        
+        // If there's an image, paint it, zoomed like the agents.
+        
+        if (displayImage != null) {
+            if (zoom == 1.0) {
+                g.drawImage(displayImage, 0, 0, this);
+            } else {
+                int imageWidth = displayImage.getWidth(this);
+                int imageHeight = displayImage.getHeight(this);
+                if ((imageWidth > 0) && (imageHeight > 0)) {
+                    g.drawImage(displayImage, screen(0, viewX), screen(0, viewY), 
+                        (int)Math.round(imageWidth * zoom), (int)Math.round(imageHeight * zoom), this);
+                }
+            }
+        }
+        
+        if ((agents == null) || agents.isEmpty()) return;
+        
+        // Work out each agent's position on the screen and colour once, by id if they're in a graph.
+        
+        int size = (graph == null) ? agents.size() : graph.getNumberOfAgents();
+        Agent [] drawn = new Agent[size];
+        for (int i = 0; i < size; i++) {
+            drawn[i] = (graph == null) ? (Agent)agents.elementAt(i) : graph.getAgent(i);
+        }
+        
+        int [] xs = new int[size];
+        int [] ys = new int[size];
+        int shift = graphShift();
+        
+        for (int i = 0; i < size; i++) {
+            xs[i] = screen(baseX(drawn[i], shift), viewX);
+            ys[i] = screen(baseY(drawn[i], shift), viewY);
+        }
+        
+        int [] colours = colourAgents(drawn);
+        
+        // Draw the links, switching colour only when it changes.
+        
+        Color current = null;
+        
+        if (graph != null) {
             
-            double max = 0;
-            double min = Double.MAX_VALUE;
-            double range = 0;
-                
-            if (colourMode == 1) {
-                if (colourMode == 1) {
-                    for (int i = 0; i < agents.size(); i++) {
-                        double value = ((Agent)agents.elementAt(i)).getValue();
-                        if (value > max) max = value;
-                        if (value < min) min = value;
-                    }
+            int [] targets = graph.getTargets();
+            
+            // Count the links that cross the screen, and if there's too many to 
+            // make out, draw them as bundles instead.
+            
+            long visible = 0;
+            for (int i = 0; i < size; i++) {
+                int offset = graph.getOffset(i);
+                int end = offset + graph.getDegree(i);
+                for (int j = offset; j < end; j++) {
+                    if (onScreen(xs[i], ys[i], xs[targets[j]], ys[targets[j]], width, height)) visible++;
                 }
-                range = max - min;
             }
             
-	    // If real geography, use their geographical X and Y.
-	    
-	    if (real == true) {
-		for (int i = 0; i < agents.size(); i++) {
-		    
-                    Agent temp = (Agent) agents.elementAt(i);
+            if (visible > 2L * LOD_LINKS) {
+                
+                drawBundles(graph, xs, ys, width, height);
+                
+            } else {
+                
+                // Each two-way link is drawn once, from the agent with the lower id.
+                
+                for (int i = 0; i < size; i++) {
                     
-		    // Draw the agent.
+                    int offset = graph.getOffset(i);
+                    int end = offset + graph.getDegree(i);
                     
-		    if (colourMode == 2) {
-			float hue = (float)Math.random(); 
-			agentColor = Color.getHSBColor(hue, (float)1, (float)1);
-			lineColor = Color.getHSBColor(hue, (float)0.7, (float)1);
-		    } else if (colourMode == 1) {
-                        int level = 235 - (int)(((temp.getValue()-min)/range)*235.0); // 235 to remove white.
-                        agentColor = new Color(level, level, level);
-			lineColor = new Color(level, level, level);
-                    }
-
-		    g.setColor(agentColor);
-		    g.fillRect(temp.getX(), temp.getY(),3, 3);
-		    
-		    // Link to its neighbours positions.
-
-                    Vector neighbours = temp.getNeighbours();
-
-                    if (neighbours.isEmpty() == false) {
-                        for (int j = 0; j < neighbours.size(); j++) {
-                            g.setColor(lineColor);
-                            Agent neighbour = (Agent)neighbours.elementAt(j);
-                            g.drawLine(temp.getX(),temp.getY(),neighbour.getX(),neighbour.getY());
+                    for (int j = offset; j < end; j++) {
+                        int neighbour = targets[j];
+                        if (!onScreen(xs[i], ys[i], xs[neighbour], ys[neighbour], width, height)) continue;
+                        if ((neighbour < i) && graph.hasArc(neighbour, i)) continue;
+                        if (current != lineColours[colours[i]]) {
+                            current = lineColours[colours[i]];
+                            g.setColor(current);
                         }
+                        g.drawLine(xs[i], ys[i], xs[neighbour], ys[neighbour]);
                     }
                 }
-		
-            // If graph space to be displayed, shift the origin to the center of the 
-	    // screen and use their display positions in graph space.
-		
-	    } else {
-		
-		int radius = (getWidth() - 10)/2;
-		
-		g.translate(radius + 5, radius + 5);
-		
-		for (int i = 0; i < agents.size(); i++) {
-		    
-                    Agent temp = (Agent) agents.elementAt(i);
-                    
-		    // Draw the agent.
-                    
-		    if (colourMode == 2) {
-			float hue = (float)Math.random();
-			agentColor = Color.getHSBColor(hue, (float)1, (float)1);
-			lineColor = Color.getHSBColor(hue, (float)0.7, (float)1);
-		    } else if (colourMode == 1) {
-                        int level = 235 - (int)(((temp.getValue()-min)/range)*235.0); // 235 to remove white.
-                        agentColor = new Color(level, level, level);
-			lineColor = new Color(level, level, level);
-                    }
-		    
-		    g.setColor(agentColor);
-		    g.fillRect(temp.getGraphX(), temp.getGraphY(),3, 3); 
-		    Vector neighbours = temp.getNeighbours();
-		    
-		    // Link to its neighbours positions.		    
-		    
-                    if (neighbours.isEmpty() == false) {
-                        for (int j = 0; j < neighbours.size(); j++) {
-                            g.setColor(lineColor);
-                            Agent neighbour = (Agent)neighbours.elementAt(j);
-                            g.drawLine(temp.getGraphX(),temp.getGraphY(),neighbour.getGraphX(),neighbour.getGraphY());
-                        }
+                
+            }
+            
+        } else {
+            
+            for (int i = 0; i < size; i++) {
+                
+                Vector neighbours = drawn[i].getNeighbours();
+                
+                for (int j = 0; j < neighbours.size(); j++) {
+                    Agent neighbour = (Agent)neighbours.elementAt(j);
+                    int neighbourX = screen(baseX(neighbour, shift), viewX);
+                    int neighbourY = screen(baseY(neighbour, shift), viewY);
+                    if (!onScreen(xs[i], ys[i], neighbourX, neighbourY, width, height)) continue;
+                    if (current != lineColours[colours[i]]) {
+                        current = lineColours[colours[i]];
+                        g.setColor(current);
                     }
-		}
-		
-		// Reset the zero point on the canvas.
-		
-		g.translate(-radius - 5, -radius - 5);
-		   
-	    } // End of whether to display the real or graph space.
-	    
-	} // End of if there are agents to display.
-		
-    } // End of paint.
+                    g.drawLine(xs[i], ys[i], neighbourX, neighbourY);
+                }
+            }
+            
+        }
+        
+        // Then the agents on top.
+        
+        for (int i = 0; i < size; i++) {
+            if ((xs[i] < -3) || (ys[i] < -3) || (xs[i] > width) || (ys[i] > height)) continue;
+            if (current != agentColours[colours[i]]) {
+                current = agentColours[colours[i]];
+                g.setColor(current);
+            }
+            g.fillRect(xs[i], ys[i], 3, 3);
+        }
+        
+    } // End of render.
+    
+    
+    
+    
+    
+    /**
+     * Draws links in aggregate, for when there are too many to draw one by one.<P>
+     * The screen is cut into a BUNDLE_CELLS by BUNDLE_CELLS grid, with an 
+     * extra ring of cells round it for agents off the screen. The links are 
+     * counted between each pair of cells and within each cell, and then 
+     * drawn as a heatmap: each pair's count is added to the pixels on the 
+     * line between the cells' centers, and each cell's own count is spread 
+     * over it. The pixels are then shaded in the line colour by how much 
+     * they've got, compared to the most. As the links are only counted, the 
+     * drawing depends on the size of the screen, not the number of links.
+    **/
+    private void drawBundles (AgentGraph graph, int [] xs, int [] ys, int width, int height) {
+        
+        int across = BUNDLE_CELLS + 2;
+        int cells = across * across;
+        if (bundles == null) {
+            bundles = new int[cells * cells];
+            heat = new int[cells];
+        } else {
+            Arrays.fill(bundles, 0);
+            Arrays.fill(heat, 0);
+        }
+        
+        double cellWidth = width / (double)BUNDLE_CELLS;
+        double cellHeight = height / (double)BUNDLE_CELLS;
+        
+        // Find each agent's cell.
+        
+        int size = graph.getNumberOfAgents();
+        int [] cellOf = new int[size];
+        
+        for (int i = 0; i < size; i++) {
+            int column = (int)Math.max(0, Math.min(across - 1, Math.floor(xs[i] / cellWidth) + 1));
+            int row = (int)Math.max(0, Math.min(across - 1, Math.floor(ys[i] / cellHeight) + 1));
+            cellOf[i] = row * across + column;
+        }
+        
+        // Count the links, once each.
+        
+        int [] targets = graph.getTargets();
+        
+        for (int i = 0; i < size; i++) {
+            int offset = graph.getOffset(i);
+            int end = offset + graph.getDegree(i);
+            for (int j = offset; j < end; j++) {
+                int neighbour = targets[j];
+                if ((neighbour < i) && graph.hasArc(neighbour, i)) continue;
+                int a = cellOf[i];
+                int b = cellOf[neighbour];
+                if (a == b) {
+                    heat[a]++;
+                } else {
+                    bundles[Math.min(a, b) * cells + Math.max(a, b)]++;
+                }
+            }
+        }
+        
+        // Add up how much of the links goes over each pixel. Links within a cell 
+        // are taken to be half a cell long on average.
+        
+        float [] density = new float[width * height];
+        
+        for (int c = 0; c < cells; c++) {
+            if (heat[c] == 0) continue;
+            float share = (float)(heat[c] * 0.5 / cellHeight);
+            int left = Math.max(0, (int)(((c % across) - 1) * cellWidth));
+            int right = Math.min(width, (int)Math.ceil(((c % across)) * cellWidth));
+            int top = Math.max(0, (int)(((c / across) - 1) * cellHeight));
+            int bottom = Math.min(height, (int)Math.ceil(((c / across)) * cellHeight));
+            for (int y = top; y < bottom; y++) {
+                for (int x = left; x < right; x++) density[y * width + x] += share;
+            }
+        }
+        
+        for (int a = 0; a < cells; a++) {
+            for (int b = a + 1; b < cells; b++) {
+                
+                int count = bundles[a * cells + b];
+                if (count == 0) continue;
+                
+                double x1 = ((a % across) - 0.5) * cellWidth;
+                double y1 = ((a / across) - 0.5) * cellHeight;
+                double x2 = ((b % across) - 0.5) * cellWidth;
+                double y2 = ((b / across) - 0.5) * cellHeight;
+                int steps = (int)Math.ceil(Math.max(Math.abs(x2 - x1), Math.abs(y2 - y1)));
+                
+                for (int step = 0; step <= steps; step++) {
+                    int x = (int)(x1 + (x2 - x1) * step / steps);
+                    int y = (int)(y1 + (y2 - y1) * step / steps);
+                    if ((x >= 0) && (y >= 0) && (x < width) && (y < height)) density[y * width + x] += count;
+                }
+                
+            }
+        }
+        
+        // Shade the pixels, on a log scale so single links still show.
+        
+        float max = 0;
+        for (int p = 0; p < density.length; p++) max = Math.max(max, density[p]);
+        if (max == 0) return;
+        
+        double scale = 1.0 / Math.log1p(max);
+        int lineRed = lineColor.getRed();
+        int lineGreen = lineColor.getGreen();
+        int lineBlue = lineColor.getBlue();
+        int [] row = new int[width];
+        
+        for (int y = 0; y < height; y++) {
+            cache.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                float d = density[y * width + x];
+                if (d == 0) continue;
+                double shade = Math.log1p(d) * scale;
+                int pixel = row[x];
+                int red = (int)(((pixel >> 16) & 0xff) * (1 - shade) + lineRed * shade);
+                int green = (int)(((pixel >> 8) & 0xff) * (1 - shade) + lineGreen * shade);
+                int blue = (int)((pixel & 0xff) * (1 - shade) + lineBlue * shade);
+                row[x] = (red << 16) | (green << 8) | blue;
+            }
+            cache.setRGB(0, y, width, 1, row, 0, width);
+        }
+        
+    } // End of drawBundles.
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a line crosses the screen.
+    **/
+    private static boolean onScreen (int x1, int y1, int x2, int y2, int width, int height) {
+        
+        // Quick checks for lines wholly off one side, then an exact one.
+        
+        if ((x1 < 0) && (x2 < 0)) return false;
+        if ((y1 < 0) && (y2 < 0)) return false;
+        if ((x1 >= width) && (x2 >= width)) return false;
+        if ((y1 >= height) && (y2 >= height)) return false;
+        if ((x1 >= 0) && (y1 >= 0) && (x1 < width) && (y1 < height)) return true;
+        return new Rectangle(0, 0, width, height).intersectsLine(x1, y1, x2, y2);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the offset added to graph space positions to center them, or 
+     * 0 for the real geography. 
+    **/
+    private int graphShift () {
+        return (real == true) ? 0 : ((getWidth() - 10) / 2) + 5;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets where an agent is drawn across before zooming.
+    **/
+    private int baseX (Agent agent, int shift) {
+        return ((real == true) ? agent.getX() : agent.getGraphX()) + shift;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets where an agent is drawn down before zooming.
+    **/
+    private int baseY (Agent agent, int shift) {
+        return ((real == true) ? agent.getY() : agent.getGraphY()) + shift;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Zooms a position onto the screen, given the view's offset. 
+     * Positions are kept well within the int range so lines can be drawn to them.
+    **/
+    private int screen (double base, double view) {
+        return (int)Math.max(-SCREEN_LIMIT, Math.min(SCREEN_LIMIT, Math.round(base * zoom - view)));
+    }
+    
+    
+    
+    
+    
+    /**
+     * Fills the palettes for the colour scheme, and gives back each 
+     * agent's place in them.
+    **/
+    private int [] colourAgents (Agent [] drawn) {
+        
+        int [] colours = new int[drawn.length];
+        
+        if (colourMode == 1) {
+            
+            // Calculate the value range of the Agents for colour stretching.
+            
+            double max = 0;
+            double min = Double.MAX_VALUE;
+            for (int i = 0; i < drawn.length; i++) {
+                double value = drawn[i].getValue();
+                if (value > max) max = value;
+                if (value < min) min = value;
+            }
+            double range = max - min;
+            
+            agentColours = GREYS;
+            lineColours = GREYS;
+            for (int i = 0; i < drawn.length; i++) {
+                int level = 235 - (int)(((drawn[i].getValue()-min)/range)*235.0); // 235 to remove white.
+                colours[i] = Math.max(0, Math.min(235, level));
+            }
+            
+        } else if (colourMode == 2) {
+            
+            // Random hues, picked from a fixed set so there's only a few Colors to make. 
+            // Each agent keeps its hue until the agents or the scheme are set again, 
+            // or the number of agents changes.
+            
+            if (randomAgentColours == null) {
+                randomAgentColours = new Color[HUES];
+                randomLineColours = new Color[HUES];
+                for (int i = 0; i < HUES; i++) {
+                    float hue = (float)i / (float)HUES;
+                    randomAgentColours[i] = Color.getHSBColor(hue, (float)1, (float)1);
+                    randomLineColours[i] = Color.getHSBColor(hue, (float)0.7, (float)1);
+                }
+            }
+            agentColours = randomAgentColours;
+            lineColours = randomLineColours;
+            if ((randomHues == null) || (randomHues.length != drawn.length)) {
+                randomHues = new int[drawn.length];
+                for (int i = 0; i < drawn.length; i++) randomHues[i] = (int)(Math.random() * HUES);
+            }
+            colours = randomHues;
+            
+        } else {
+            
+            agentColours = new Color [] {agentColor};
+            lineColours = new Color [] {lineColor};
+            
+        }
+        
+        return colours;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Finds the AgentGraph holding exactly the agents displayed, if there is one.
+    **/
+    private AgentGraph findGraph () {
+        
+        if ((agents == null) || agents.isEmpty()) return null;
+        
+        AgentGraph found = ((Agent)agents.elementAt(0)).getGraph();
+        if ((found == null) || (found.getNumberOfAgents() != agents.size())) return null;
+        
+        for (int i = 0; i < agents.size(); i++) {
+            if (((Agent)agents.elementAt(i)).getGraph() != found) return null;
+        }
+        
+        return found;
+        
+    }
     
     
     
@@ -284,27 +738,26 @@ public class GUICanvas extends Canvas implements MouseListener {
     /** 
      * Gets a list of an Agent's properties when the user clicks on it.
      * The list is given in the order Name, Value, Attributes. 
+     * Agents are found with a SpatialIndex of where they're drawn.
     */
     public void mouseClicked(MouseEvent e) {
         
+        if ((agents == null) || agents.isEmpty() || hold) return;
+        
+        // Find the Agents near where they've clicked before zooming, 
+        // then check which are within 3 pixels on the screen.
+        
         int x = e.getX();
         int y = e.getY();
+        int shift = graphShift();
+        int reach = (int)Math.ceil(3 / zoom) + 1;
+        int [] found = getIndex().find((int)Math.round((x + viewX) / zoom), (int)Math.round((y + viewY) / zoom), reach);
         
-        // Find the Agent they've clicked on.
-        
-        for (int i = 0; i < agents.size(); i++) {
+        for (int i = 0; i < found.length; i++) {
             
-            Agent agent = (Agent)agents.elementAt(i);
-            int agentX = 0;
-            int agentY = 0;
-            if (real == true) {
-                agentX = agent.getX();
-                agentY = agent.getY();
-            } else {
-                int radius = (getWidth() - 10)/2;
-                agentX = agent.getGraphX() + radius + 5;
-                agentY = agent.getGraphY() + radius + 5;
-            }
+            Agent agent = indexedAgents[found[i]];
+            int agentX = screen(baseX(agent, shift), viewX);
+            int agentY = screen(baseY(agent, shift), viewY);
             
             // Send its properties to the reporting script. 
             // This is kept separate incase we want a different interface 
@@ -313,6 +766,7 @@ public class GUICanvas extends Canvas implements MouseListener {
             if (((x > agentX - 3) && (x < agentX + 3)) && ((y > agentY - 3) && (y < agentY + 3))) {
                 report(agent.getName(), agent.getValue(), agent.getAttributes());
             }
+            
         }
     }
     
@@ -320,6 +774,88 @@ public class GUICanvas extends Canvas implements MouseListener {
     
     
     
+    /**
+     * Zooms in or out around the mouse when the wheel is turned.
+     * Zooming out stops at the whole view.
+    **/
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        
+        if (hold) return;
+        
+        double newZoom = zoom * Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation());
+        newZoom = Math.max(1.0, Math.min(MAX_ZOOM, newZoom));
+        
+        // Keep the point under the mouse where it is.
+        
+        if (newZoom == 1.0) {
+            viewX = 0;
+            viewY = 0;
+        } else {
+            viewX = ((e.getX() + viewX) / zoom) * newZoom - e.getX();
+            viewY = ((e.getY() + viewY) / zoom) * newZoom - e.getY();
+        }
+        
+        zoom = newZoom;
+        cacheValid = false;
+        repaint();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the index of where the agents are drawn in the current view, 
+     * making it if the agents have changed since it was last made.
+    **/
+    private SpatialIndex getIndex() {
+        
+        if ((indexedAgents == null) || (indexedAgents.length != agents.size())) {
+            indexedAgents = new Agent[agents.size()];
+            for (int i = 0; i < indexedAgents.length; i++) indexedAgents[i] = (Agent)agents.elementAt(i);
+            realIndex = null;
+            graphIndex = null;
+        }
+        
+        int [] xs = new int[indexedAgents.length];
+        int [] ys = new int[indexedAgents.length];
+        
+        if (real == true) {
+            
+            if (realIndex == null) {
+                for (int i = 0; i < xs.length; i++) {
+                    xs[i] = indexedAgents[i].getX();
+                    ys[i] = indexedAgents[i].getY();
+                }
+                realIndex = new SpatialIndex(xs, ys, PICK_CELL);
+            }
+            return realIndex;
+            
+        } else {
+            
+            // Graph space is drawn centered, so the index depends on the width.
+            
+            int shift = graphShift();
+            
+            if ((graphIndex == null) || (graphIndexShift != shift)) {
+                for (int i = 0; i < xs.length; i++) {
+                    xs[i] = indexedAgents[i].getGraphX() + shift;
+                    ys[i] = indexedAgents[i].getGraphY() + shift;
+                }
+                graphIndex = new SpatialIndex(xs, ys, PICK_CELL);
+                graphIndexShift = shift;
+            }
+            return graphIndex;
+            
+        }
+        
+    } // End of getIndex.
+    
+    
+    
+    
+    
     /** 
      * Displays a popup list of an Agent's properties when the user clicks on it.
      * The list is given in the order Attribute, Value, Properties. 
@@ -0,0 +1,289 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.util.*;
+import javax.xml.stream.*;
+
+/**
+ * Reads agents and their links from a GraphML file.<P>
+ * The file is streamed through a StAX XMLStreamReader, so it never has to 
+ * be held in memory as a document; only the agents and a growing array 
+ * of link ends are kept. Each &lt;node&gt; becomes an Agent named by its id, 
+ * and each &lt;edge&gt; links its source and target both ways; edges may 
+ * come before the nodes they name, and any node only named by an edge is 
+ * made as well. Agents are in the order their ids first appear. Whether the 
+ * graph says it is directed is ignored, and links repeated, or from an 
+ * agent to itself, are dropped, as in EdgeListReader.<P>
+ * Node &lt;data&gt; is matched to its &lt;key&gt;'s attr.name. x, y, z, 
+ * graphX, graphY, graphZ and value are parsed into the relevant Agent 
+ * variables, as AgentReader does; all others, for example labels, are 
+ * stored as String-String pairs in the Agent's attributes Hashtable. 
+ * Edge data is skipped. Missing positions are left at -1 for 
+ * SmallWorldEngine.setAgents to fill in.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class GraphMLReader {
+    
+    public static final String EXTENSION = ".graphml";     // File ending read.
+    
+    private HashMap ids = null;             // Agent ids, as Integers, by node id.
+    private Vector agents = null;           // Agents in id order.
+    private HashMap keyNames = null;        // attr.names of keys, by key id.
+    private int [] ends = new int[64];      // Ids at the ends of each link, in pairs.
+    private int length = 0;                 // Used part of ends.
+    
+    
+    /** 
+     * Creates a new instance of GraphMLReader.
+    **/
+    public GraphMLReader() {
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks whether a file's name ends with EXTENSION.
+    **/
+    public static boolean isGraphML(File file) {
+        return file.getName().toLowerCase().endsWith(EXTENSION);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the agents from a file, linked up in an AgentGraph.
+    **/
+    public Vector readAgents(File file) throws IOException {
+        return readAgents(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+    }
+    
+    
+    
+    
+    
+    /**
+     * Reads the agents from a stream, for example one decompressing 
+     * a file (see AgentCompression), closing it at the end.
+    **/
+    public Vector readAgents(InputStream in) throws IOException {
+        
+        ids = new HashMap();
+        agents = new Vector();
+        keyNames = new HashMap();
+        length = 0;
+        
+        try {
+            
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            
+            try {
+                read(reader);
+            } finally {
+                reader.close();
+            }
+            
+        } catch (XMLStreamException xse) {
+            throw new IOException("Can't read GraphML: " + xse.getMessage(), xse);
+        } finally {
+            in.close();
+        }
+        
+        Agent [] made = (Agent [])agents.toArray(new Agent[agents.size()]);
+        EdgeListReader.makeGraph(made, new int [][] {ends}, new int [] {length});
+        
+        Vector read = agents;
+        ids = null;
+        agents = null;
+        keyNames = null;
+        ends = new int[64];
+        return read;
+        
+    } // End of readAgents.
+    
+    
+    
+    
+    
+    /**
+     * Runs through the elements, picking out keys, nodes, their data, and edges.
+    **/
+    private void read(XMLStreamReader reader) throws XMLStreamException {
+        
+        Agent node = null;              // Node being read, if any.
+        String dataName = null;         // attr.name of the data being read, if any.
+        StringBuilder text = new StringBuilder();
+        
+        while (reader.hasNext()) {
+            
+            int event = reader.next();
+            
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                
+                String element = reader.getLocalName();
+                
+                if (element.equals("key")) {
+                    String id = reader.getAttributeValue(null, "id");
+                    String name = reader.getAttributeValue(null, "attr.name");
+                    if (id != null) keyNames.put(id, (name == null) ? id : name);
+                } else if (element.equals("node")) {
+                    node = agent(reader.getAttributeValue(null, "id"));
+                } else if (element.equals("edge")) {
+                    int source = id(reader.getAttributeValue(null, "source"));
+                    int target = id(reader.getAttributeValue(null, "target"));
+                    addLink(source, target);
+                } else if (element.equals("data") && (node != null)) {
+                    String key = reader.getAttributeValue(null, "key");
+                    dataName = (String)keyNames.get(key);
+                    if (dataName == null) dataName = key;
+                    text.setLength(0);
+                }
+                
+            } else if ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA)) {
+                
+                if (dataName != null) text.append(reader.getText());
+                
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                
+                String element = reader.getLocalName();
+                
+                if (element.equals("data") && (dataName != null)) {
+                    setData(node, dataName, text.toString().trim());
+                    dataName = null;
+                } else if (element.equals("node")) {
+                    node = null;
+                }
+                
+            }
+            
+        } // End of events.
+        
+    } // End of read.
+    
+    
+    
+    
+    
+    /**
+     * Gets the agent for a node id, making it if it hasn't been met.
+    **/
+    private Agent agent(String nodeId) throws XMLStreamException {
+        return (Agent)agents.elementAt(id(nodeId));
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the agent id for a node id, making the agent if it hasn't been met.
+    **/
+    private int id(String nodeId) throws XMLStreamException {
+        
+        if (nodeId == null) throw new XMLStreamException("Node or edge without an id");
+        
+        Integer id = (Integer)ids.get(nodeId);
+        
+        if (id == null) {
+            id = Integer.valueOf(agents.size());
+            ids.put(nodeId, id);
+            Agent agent = new Agent();
+            agent.setName(nodeId);
+            agents.add(agent);
+        }
+        return id.intValue();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds a link to the array of link ends.
+    **/
+    private void addLink(int a, int b) {
+        if (length + 2 > ends.length) ends = Arrays.copyOf(ends, (int)Math.min((long)ends.length * 2, Integer.MAX_VALUE - 8));
+        ends[length++] = a;
+        ends[length++] = b;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Puts a node's data into its agent. Numbers that can't be 
+     * parsed are kept as attributes instead.
+    **/
+    private void setData(Agent agent, String name, String value) {
+        
+        try {
+            if (name.equals("x")) {
+                agent.setX((int)Double.parseDouble(value));
+            } else if (name.equals("y")) {
+                agent.setY((int)Double.parseDouble(value));
+            } else if (name.equals("z")) {
+                agent.setZ((int)Double.parseDouble(value));
+            } else if (name.equals("graphX")) {
+                agent.setGraphX((int)Double.parseDouble(value));
+            } else if (name.equals("graphY")) {
+                agent.setGraphY((int)Double.parseDouble(value));
+            } else if (name.equals("graphZ")) {
+                agent.setGraphZ((int)Double.parseDouble(value));
+            } else if (name.equals("value")) {
+                agent.setValue(Double.parseDouble(value));
+            } else {
+                addAttribute(agent, name, value);
+            }
+        } catch (NumberFormatException nfe) {
+            addAttribute(agent, name, value);
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds a name-value pair to an agent's attributes.
+    **/
+    private void addAttribute(Agent agent, String name, String value) {
+        
+        Hashtable attributes = agent.getAttributes();
+        
+        if (attributes == null) {
+            attributes = new Hashtable();
+            agent.setAttributes(attributes);
+        }
+        attributes.put(name, value);
+        
+    }
+
+
+// End of class.
+}
@@ -0,0 +1,257 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+
+/**
+ * A sparse table of how many neighbours each pair of agents has in common.<P>
+ * Agents are referred to by their id in an AgentGraph. Each agent has 
+ * a small open-addressed hash row holding only the agents it shares at least 
+ * one neighbour with, so the table's size depends on the number of two-step 
+ * paths in the network rather than the square of the number of agents.<P>
+ * The table is built once from the network and then kept up to date with 
+ * linkAdded, which only touches the agents next to the new link. Links are 
+ * treated as two-way, as they are made by SmallWorldEngine and AgentIO.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class MutualNeighbourTable {
+    
+    private static final int EMPTY = -1;        // Marks an unused slot in a row.
+    
+    private int [][] keys = null;               // For each agent, the agents it shares neighbours with.
+    private int [][] counts = null;             // For each agent, how many neighbours are shared.
+    private int [] sizes = null;                // Number of used slots in each row.
+    
+    
+    /** 
+     * Creates an empty table for the given number of agents.
+    **/
+    public MutualNeighbourTable(int numberOfAgents) {
+        keys = new int[numberOfAgents][];
+        counts = new int[numberOfAgents][];
+        sizes = new int[numberOfAgents];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Fills the table from a network.
+     * Every pair of agents that are both linked to the same agent 
+     * gets one count for it.
+    **/
+    public void build(AgentGraph graph) {
+        
+        int [] targets = graph.getTargets();
+        
+        for (int v = 0; v < graph.getNumberOfAgents(); v++) {
+            
+            int start = graph.getOffset(v);
+            int end = start + graph.getDegree(v);
+            
+            for (int i = start; i < end; i++) {
+                for (int j = start; j < end; j++) {
+                    if (i != j) increment(targets[i], targets[j]);
+                }
+            }
+        }
+        
+    } // End of build.
+    
+    
+    
+    
+    
+    /**
+     * Updates the table for a new two-way link between agents a and b.
+     * Must be called before the link is added to the graph. Every existing 
+     * neighbour of a now shares a with b, and every existing neighbour 
+     * of b now shares b with a.
+    **/
+    public void linkAdded(int a, int b, AgentGraph graph) {
+        
+        int [] targets = graph.getTargets();
+        int start = graph.getOffset(a);
+        int end = start + graph.getDegree(a);
+        
+        for (int i = start; i < end; i++) {
+            int c = targets[i];
+            if (c != b) {
+                increment(b, c);
+                increment(c, b);
+            }
+        }
+        
+        start = graph.getOffset(b);
+        end = start + graph.getDegree(b);
+        
+        for (int i = start; i < end; i++) {
+            int d = targets[i];
+            if (d != a) {
+                increment(a, d);
+                increment(d, a);
+            }
+        }
+        
+    } // End of linkAdded.
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of neighbours agents a and b have in common.
+    **/
+    public int get(int a, int b) {
+        
+        int [] row = keys[a];
+        if (row == null) return 0;
+        
+        int mask = row.length - 1;
+        int slot = hash(b) & mask;
+        
+        while (row[slot] != EMPTY) {
+            if (row[slot] == b) return counts[a][slot];
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the raw slots of agent a's row.
+     * Used slots hold the position of an agent sharing neighbours with a; 
+     * unused ones hold -1. Returns null if a shares no neighbours. Given as 
+     * an array so callers can run through a row without making any objects.
+    **/
+    public int [] getRowAgents(int a) {
+        return keys[a];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the counts matching the slots returned by getRowAgents.
+    **/
+    public int [] getRowCounts(int a) {
+        return counts[a];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of agents that share at least one neighbour with a.
+    **/
+    public int getRowSize(int a) {
+        return sizes[a];
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds one to the count for a against b (but not b against a).
+    **/
+    private void increment(int a, int b) {
+        
+        int [] row = keys[a];
+        
+        if (row == null) {
+            row = new int[4];
+            Arrays.fill(row, EMPTY);
+            keys[a] = row;
+            counts[a] = new int[4];
+        } else if ((sizes[a] + 1) * 2 > row.length) {
+            row = grow(a);
+        }
+        
+        int mask = row.length - 1;
+        int slot = hash(b) & mask;
+        
+        while (row[slot] != EMPTY) {
+            if (row[slot] == b) {
+                counts[a][slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        
+        row[slot] = b;
+        counts[a][slot] = 1;
+        sizes[a]++;
+        
+    } // End of increment.
+    
+    
+    
+    
+    
+    /**
+     * Doubles the size of a row, rehashing its entries.
+    **/
+    private int [] grow(int a) {
+        
+        int [] oldKeys = keys[a];
+        int [] oldCounts = counts[a];
+        int [] newKeys = new int[oldKeys.length * 2];
+        int [] newCounts = new int[oldKeys.length * 2];
+        Arrays.fill(newKeys, EMPTY);
+        int mask = newKeys.length - 1;
+        
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (newKeys[slot] != EMPTY) slot = (slot + 1) & mask;
+                newKeys[slot] = oldKeys[i];
+                newCounts[slot] = oldCounts[i];
+            }
+        }
+        
+        keys[a] = newKeys;
+        counts[a] = newCounts;
+        return newKeys;
+        
+    } // End of grow.
+    
+    
+    
+    
+    
+    /**
+     * Spreads agent positions over the row so runs of neighbours don't cluster.
+    **/
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    
+// End of class.
+}
@@ -0,0 +1,367 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A Vector of an Agent's neighbours that reads and writes an AgentGraph.<P>
+ * Agents in an AgentGraph use this as their neighbours variable, so 
+ * code written against Agent.getNeighbours keeps working while the links 
+ * themselves are held as ints in the graph. Reading a neighbour just looks 
+ * up the id in the graph, so nothing is copied or made. Only Agents in the 
+ * same graph can be added.<P>
+ * Unlike a normal Vector this isn't synchronized, and setSize can only 
+ * shrink it, as a neighbour can't be null.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class NeighbourView extends Vector {
+    
+    private AgentGraph graph = null;        // Where the links are stored.
+    private int id = -1;                    // Id of the Agent whose neighbours these are.
+    private List list = null;               // Plain list version for the Collections methods.
+    
+    
+    /** 
+     * Creates a view of the given agent's neighbours.
+    **/
+    public NeighbourView(AgentGraph graph, int id) {
+        super(0);
+        this.graph = graph;
+        this.id = id;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the id of a neighbour Agent, checking it's in our graph.
+    **/
+    private int idOf(Object o) {
+        
+        if ((o instanceof Agent) && (((Agent)o).getGraph() == graph)) {
+            return ((Agent)o).getId();
+        }
+        throw new IllegalArgumentException("Neighbours must be Agents in the same AgentGraph");
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets a plain AbstractList over the view.
+     * Used to supply the more complex Collections methods, which would 
+     * otherwise look at the (empty) Vector storage.
+    **/
+    private List list() {
+        
+        if (list == null) {
+            list = new AbstractList() {
+                public Object get(int index) {
+                    return elementAt(index);
+                }
+                public int size() {
+                    return graph.getDegree(id);
+                }
+                public Object set(int index, Object o) {
+                    return graph.getAgent(graph.setArc(id, index, idOf(o)));
+                }
+                public void add(int index, Object o) {
+                    graph.insertArc(id, index, idOf(o));
+                    modCount++;
+                }
+                public Object remove(int index) {
+                    modCount++;
+                    return graph.getAgent(graph.removeArcAt(id, index));
+                }
+            };
+        }
+        return list;
+        
+    }
+    
+    
+    
+    
+    
+    // Reading.
+    
+    public int size() {
+        return graph.getDegree(id);
+    }
+    
+    public boolean isEmpty() {
+        return graph.getDegree(id) == 0;
+    }
+    
+    public Object elementAt(int index) {
+        return graph.getAgent(graph.getNeighbour(id, index));
+    }
+    
+    public Object get(int index) {
+        return elementAt(index);
+    }
+    
+    public Object firstElement() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return elementAt(0);
+    }
+    
+    public Object lastElement() {
+        if (isEmpty()) throw new NoSuchElementException();
+        return elementAt(size() - 1);
+    }
+    
+    public boolean contains(Object o) {
+        return indexOf(o, 0) > -1;
+    }
+    
+    public int indexOf(Object o) {
+        return indexOf(o, 0);
+    }
+    
+    public int indexOf(Object o, int index) {
+        
+        if ((o instanceof Agent) == false || ((Agent)o).getGraph() != graph) return -1;
+        
+        int target = ((Agent)o).getId();
+        int [] targets = graph.getTargets();
+        int offset = graph.getOffset(id);
+        int degree = graph.getDegree(id);
+        
+        if (index < 0) throw new ArrayIndexOutOfBoundsException(index);
+        
+        for (int i = index; i < degree; i++) {
+            if (targets[offset + i] == target) return i;
+        }
+        return -1;
+        
+    }
+    
+    public int lastIndexOf(Object o) {
+        return lastIndexOf(o, size() - 1);
+    }
+    
+    public int lastIndexOf(Object o, int index) {
+        
+        if ((o instanceof Agent) == false || ((Agent)o).getGraph() != graph) return -1;
+        
+        int target = ((Agent)o).getId();
+        int [] targets = graph.getTargets();
+        int offset = graph.getOffset(id);
+        int degree = graph.getDegree(id);
+        
+        if (index >= degree) throw new IndexOutOfBoundsException(index + " >= " + degree);
+        
+        for (int i = index; i >= 0; i--) {
+            if (targets[offset + i] == target) return i;
+        }
+        return -1;
+        
+    }
+    
+    public Enumeration elements() {
+        return Collections.enumeration(list());
+    }
+    
+    public Iterator iterator() {
+        return list().iterator();
+    }
+    
+    public ListIterator listIterator() {
+        return list().listIterator();
+    }
+    
+    public ListIterator listIterator(int index) {
+        return list().listIterator(index);
+    }
+    
+    public List subList(int fromIndex, int toIndex) {
+        return list().subList(fromIndex, toIndex);
+    }
+    
+    public Spliterator spliterator() {
+        return list().spliterator();
+    }
+    
+    public Object [] toArray() {
+        return list().toArray();
+    }
+    
+    public Object [] toArray(Object [] a) {
+        return list().toArray(a);
+    }
+    
+    public void copyInto(Object [] anArray) {
+        for (int i = 0; i < size(); i++) anArray[i] = elementAt(i);
+    }
+    
+    public void forEach(Consumer action) {
+        for (int i = 0; i < size(); i++) action.accept(elementAt(i));
+    }
+    
+    public boolean containsAll(Collection c) {
+        return list().containsAll(c);
+    }
+    
+    public boolean equals(Object o) {
+        return list().equals(o);
+    }
+    
+    public int hashCode() {
+        return list().hashCode();
+    }
+    
+    public String toString() {
+        return list().toString();
+    }
+    
+    /**
+     * Returns an ordinary Vector holding the current neighbours.
+    **/
+    public Object clone() {
+        return new Vector(list());
+    }
+    
+    
+    
+    
+    
+    // Writing.
+    
+    public boolean add(Object o) {
+        graph.addArc(id, idOf(o));
+        modCount++;
+        return true;
+    }
+    
+    public void addElement(Object o) {
+        add(o);
+    }
+    
+    public void add(int index, Object o) {
+        list().add(index, o);
+    }
+    
+    public void insertElementAt(Object o, int index) {
+        list().add(index, o);
+    }
+    
+    public Object set(int index, Object o) {
+        return list().set(index, o);
+    }
+    
+    public void setElementAt(Object o, int index) {
+        list().set(index, o);
+    }
+    
+    public boolean remove(Object o) {
+        if ((o instanceof Agent) == false || ((Agent)o).getGraph() != graph) return false;
+        modCount++;
+        return graph.removeArc(id, ((Agent)o).getId());
+    }
+    
+    public boolean removeElement(Object o) {
+        return remove(o);
+    }
+    
+    public Object remove(int index) {
+        return list().remove(index);
+    }
+    
+    public void removeElementAt(int index) {
+        list().remove(index);
+    }
+    
+    public void clear() {
+        graph.clearArcs(id);
+        modCount++;
+    }
+    
+    public void removeAllElements() {
+        clear();
+    }
+    
+    public boolean addAll(Collection c) {
+        for (Iterator i = c.iterator(); i.hasNext();) add(i.next());
+        return c.isEmpty() == false;
+    }
+    
+    public boolean addAll(int index, Collection c) {
+        return list().addAll(index, c);
+    }
+    
+    public boolean removeAll(Collection c) {
+        return list().removeAll(c);
+    }
+    
+    public boolean retainAll(Collection c) {
+        return list().retainAll(c);
+    }
+    
+    public boolean removeIf(Predicate filter) {
+        return list().removeIf(filter);
+    }
+    
+    public void replaceAll(UnaryOperator operator) {
+        list().replaceAll(operator);
+    }
+    
+    public void sort(Comparator c) {
+        list().sort(c);
+    }
+    
+    protected void removeRange(int fromIndex, int toIndex) {
+        for (int i = toIndex - 1; i >= fromIndex; i--) graph.removeArcAt(id, i);
+        modCount++;
+    }
+    
+    
+    
+    
+    
+    // Storage - there is none of our own to manage.
+    
+    /**
+     * Drops the neighbours from newSize on. Throws an UnsupportedOperationException 
+     * if newSize is larger than the size, as there are no null neighbours to add.
+    **/
+    public void setSize(int newSize) {
+        if (newSize < 0) throw new ArrayIndexOutOfBoundsException(newSize);
+        if (newSize > size()) throw new UnsupportedOperationException("NeighbourView can't be grown with nulls");
+        if (newSize < size()) removeRange(newSize, size());
+    }
+    
+    public void trimToSize() {
+    }
+    
+    public void ensureCapacity(int minCapacity) {
+    }
+    
+    public int capacity() {
+        return size();
+    }
+    
+    
+// End of class.
+}
@@ -0,0 +1,39 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+/**
+ * Listens to how long-running work, such as small world connecting or 
+ * running the agents, is going, and can stop it.<P>
+ * SmallWorldEngine and AlphaRewiring call progress from the thread doing 
+ * the work, at points where the agents aren't part way through being changed, 
+ * so a listener can look at them (for example, to draw them) before returning.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public interface ProgressListener {
+    
+    
+    /**
+     * Told how much of a task is done, from 0 to 1.
+     * Return false to stop the work early.
+    **/
+    public boolean progress(String task, double done);
+
+// End of interface.
+}
@@ -0,0 +1,480 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+/**
+ * Timings and counts for the model's main phases, for seeing where time 
+ * goes on long runs and comparing set-ups.<P>
+ * There is one set of stats for the program, got with getStats. Each phase 
+ * (ring generation, small world connecting, runs, import, export, drawing 
+ * and measuring) is timed by calling begin with the phase before it and 
+ * end on what begin gives back after it. The counters are added to by the 
+ * code doing the work in batches, for example once per AlphaRewiring progress 
+ * report or per UpdateTask, so the hot loops only touch local variables.<P>
+ * Allocation is estimated from the bytes allocated by the thread that 
+ * began the phase, where the JVM can tell us (HotSpot can). Work done on 
+ * ForkJoinPools isn't included, so it's an underestimate for parallel phases.<P>
+ * The stats can be watched over JMX once register has been called (see 
+ * SimulationStatsMBean), and written out as text or JSON, once or 
+ * every so often (see startDumping).<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class SimulationStats implements SimulationStatsMBean {
+    
+    public static final int GENERATE = 0;       // Making a ring world.
+    public static final int SMALL_WORLD = 1;    // Small world connecting.
+    public static final int RUNS = 2;           // Running the agents.
+    public static final int IMPORT = 3;         // Reading agents.
+    public static final int EXPORT = 4;         // Writing agents.
+    public static final int PAINT = 5;          // Drawing agents.
+    public static final int METRICS = 6;        // Measuring how small world the agents are.
+    
+    private static final String [] PHASE_NAMES = {"generate", "smallWorld", "runs", "import", "export", "paint", "metrics"};
+    public static final String OBJECT_NAME = "SmallWorld:type=SimulationStats";    // Name registered with JMX.
+    
+    private static final SimulationStats STATS = new SimulationStats();    // The program's stats.
+    
+    private long [] counts = new long[PHASE_NAMES.length];      // Times each phase has run.
+    private long [] nanos = new long[PHASE_NAMES.length];       // Time spent in each phase.
+    private long [] lastNanos = new long[PHASE_NAMES.length];   // Time each phase last took.
+    private long [] allocated = new long[PHASE_NAMES.length];   // Bytes allocated in each phase.
+    private AtomicLong connectionsAttempted = new AtomicLong();
+    private AtomicLong duplicatesSkipped = new AtomicLong();
+    private AtomicLong linksAdded = new AtomicLong();
+    private AtomicLong propensityDraws = new AtomicLong();
+    private AtomicLong agentsUpdated = new AtomicLong();
+    private com.sun.management.ThreadMXBean threads = null;     // For allocation, if the JVM supports it.
+    private boolean registered = false;                         // True once registered with JMX.
+    private java.util.Timer dumper = null;                      // Writes the stats out every so often.
+    
+    
+    
+    
+    
+    /**
+     * The timing of one run of a phase, from begin to end.
+    **/
+    public class Timing {
+        
+        private int phase = 0;              // Phase being timed.
+        private long started = 0;           // When it began.
+        private long allocatedBefore = -1;  // Bytes allocated by the thread when it began, or -1 if not known.
+        
+        
+        /**
+         * Finishes timing the phase, and adds it to the stats.
+        **/
+        public void end() {
+            long time = System.nanoTime() - started;
+            long bytes = (allocatedBefore < 0) ? 0 : Math.max(0, allocatedBytes() - allocatedBefore);
+            synchronized (SimulationStats.this) {
+                counts[phase]++;
+                nanos[phase] = nanos[phase] + time;
+                lastNanos[phase] = time;
+                allocated[phase] = allocated[phase] + bytes;
+            }
+        }
+    
+    // End of Timing.
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets up the stats, finding out whether allocation can be measured.
+    **/
+    private SimulationStats() {
+        
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        
+        try {
+            if ((bean instanceof com.sun.management.ThreadMXBean) && 
+                ((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+                threads = (com.sun.management.ThreadMXBean)bean;
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException uoe) {
+            threads = null;
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the program's stats.
+    **/
+    public static SimulationStats getStats() {
+        return STATS;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Registers the stats with the platform MBean server, as OBJECT_NAME, 
+     * if they aren't already.
+    **/
+    public synchronized void register() {
+        
+        if (registered) return;
+        
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException jme) {
+            System.err.println("Couldn't register stats with JMX: " + jme);
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Starts timing a phase. Call end on what's returned when it finishes.
+    **/
+    public Timing begin(int phase) {
+        Timing timing = new Timing();
+        timing.phase = phase;
+        timing.allocatedBefore = allocatedBytes();
+        timing.started = System.nanoTime();
+        return timing;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds to the small world connecting counts.
+    **/
+    public void addConnections(long attempted, long duplicates, long added, long draws) {
+        connectionsAttempted.addAndGet(attempted);
+        duplicatesSkipped.addAndGet(duplicates);
+        linksAdded.addAndGet(added);
+        propensityDraws.addAndGet(draws);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Adds to the count of agent updates.
+    **/
+    public void addAgentsUpdated(long updated) {
+        agentsUpdated.addAndGet(updated);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the bytes the current thread has allocated, or -1 if not known.
+    **/
+    private long allocatedBytes() {
+        return (threads == null) ? -1 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the names of the phases timed.
+    **/
+    public String [] getPhaseNames() {
+        return PHASE_NAMES.clone();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of times each phase has run.
+    **/
+    public synchronized long [] getPhaseCounts() {
+        return counts.clone();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the total time spent in each phase, in milliseconds.
+    **/
+    public synchronized double [] getPhaseMillis() {
+        double [] millis = new double[nanos.length];
+        for (int i = 0; i < millis.length; i++) millis[i] = nanos[i] / 1.0e6;
+        return millis;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the time the last run of each phase took, in milliseconds.
+    **/
+    public synchronized double [] getLastPhaseMillis() {
+        double [] millis = new double[lastNanos.length];
+        for (int i = 0; i < millis.length; i++) millis[i] = lastNanos[i] / 1.0e6;
+        return millis;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets an estimate of the bytes allocated in each phase.
+    **/
+    public synchronized long [] getPhaseAllocatedBytes() {
+        return allocated.clone();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of links agents have tried to make while small world connecting.
+    **/
+    public long getConnectionsAttempted() {
+        return connectionsAttempted.get();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of tries that picked an existing neighbour.
+    **/
+    public long getDuplicatesSkipped() {
+        return duplicatesSkipped.get();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of new links made while small world connecting.
+    **/
+    public long getLinksAdded() {
+        return linksAdded.get();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the share of connection tries that made a new link.
+     * Returns 0 if there haven't been any.
+    **/
+    public double getLinksAddedRatio() {
+        long attempted = getConnectionsAttempted();
+        return (attempted == 0) ? 0 : getLinksAdded() / (double)attempted;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of propensities worked out for picks.
+    **/
+    public long getPropensityDraws() {
+        return propensityDraws.get();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of agent updates done by runs.
+    **/
+    public long getAgentsUpdated() {
+        return agentsUpdated.get();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the agent updates per second of time spent running.
+    **/
+    public synchronized double getAgentsUpdatedPerSecond() {
+        return (nanos[RUNS] == 0) ? 0 : agentsUpdated.get() / (nanos[RUNS] / 1.0e9);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets everything as text.
+    **/
+    public synchronized String getReport() {
+        
+        StringBuilder report = new StringBuilder();
+        
+        report.append(String.format("%-12s %8s %14s %12s %16s%n", "phase", "count", "total ms", "last ms", "allocated bytes"));
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            report.append(String.format("%-12s %8d %14.3f %12.3f %16d%n", PHASE_NAMES[i], counts[i], 
+                nanos[i] / 1.0e6, lastNanos[i] / 1.0e6, allocated[i]));
+        }
+        report.append("connections attempted " + getConnectionsAttempted() + ", duplicates skipped " + getDuplicatesSkipped() + 
+            ", links added " + getLinksAdded() + String.format(" (%.3f of tries)", getLinksAddedRatio()) + 
+            ", propensity draws " + getPropensityDraws() + "\n");
+        report.append("agents updated " + getAgentsUpdated() + " (" + Math.round(getAgentsUpdatedPerSecond()) + " per second)\n");
+        
+        return report.toString();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets everything as JSON.
+    **/
+    public synchronized String getJSON() {
+        
+        StringBuilder json = new StringBuilder("{\n  \"phases\" : {\n");
+        
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            json.append("    \"" + PHASE_NAMES[i] + "\" : { \"count\" : " + counts[i] + ", \"totalMillis\" : " + (nanos[i] / 1.0e6) + 
+                ", \"lastMillis\" : " + (lastNanos[i] / 1.0e6) + ", \"allocatedBytes\" : " + allocated[i] + " }");
+            json.append((i < PHASE_NAMES.length - 1) ? ",\n" : "\n");
+        }
+        json.append("  },\n");
+        json.append("  \"connectionsAttempted\" : " + getConnectionsAttempted() + ",\n");
+        json.append("  \"duplicatesSkipped\" : " + getDuplicatesSkipped() + ",\n");
+        json.append("  \"linksAdded\" : " + getLinksAdded() + ",\n");
+        json.append("  \"linksAddedRatio\" : " + getLinksAddedRatio() + ",\n");
+        json.append("  \"propensityDraws\" : " + getPropensityDraws() + ",\n");
+        json.append("  \"agentsUpdated\" : " + getAgentsUpdated() + ",\n");
+        json.append("  \"agentsUpdatedPerSecond\" : " + getAgentsUpdatedPerSecond() + "\n");
+        json.append("}\n");
+        
+        return json.toString();
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets everything back to zero.
+    **/
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(nanos, 0);
+        Arrays.fill(lastNanos, 0);
+        Arrays.fill(allocated, 0);
+        connectionsAttempted.set(0);
+        duplicatesSkipped.set(0);
+        linksAdded.set(0);
+        propensityDraws.set(0);
+        agentsUpdated.set(0);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes the stats as text to out, and as JSON to jsonFile, either of 
+     * which can be null, every period milliseconds until stopDumping.
+    **/
+    public synchronized void startDumping(long period, final PrintStream out, final File jsonFile) {
+        
+        stopDumping();
+        dumper = new java.util.Timer("SimulationStats dump", true);
+        dumper.schedule(new TimerTask() {
+            public void run() {
+                dump(out, jsonFile);
+            }
+        }, period, period);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Stops writing the stats every so often.
+    **/
+    public synchronized void stopDumping() {
+        if (dumper != null) dumper.cancel();
+        dumper = null;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Writes the stats as text to out, and as JSON to jsonFile, either of which can be null.
+    **/
+    public void dump(PrintStream out, File jsonFile) {
+        
+        if (out != null) out.print(getReport());
+        
+        if (jsonFile != null) {
+            try {
+                Writer writer = new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8");
+                try {
+                    writer.write(getJSON());
+                } finally {
+                    writer.close();
+                }
+            } catch (IOException ioe) {
+                System.err.println("Couldn't write stats to " + jsonFile + ": " + ioe);
+            }
+        }
+        
+    }
+
+// End of class.
+}
@@ -0,0 +1,120 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+/**
+ * The management interface for SimulationStats, so the timings and counts 
+ * can be watched with JConsole or any other JMX client while the model runs. 
+ * See SimulationStats for what each means.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public interface SimulationStatsMBean {
+    
+    
+    /**
+     * Gets the names of the phases timed.
+    **/
+    public String [] getPhaseNames();
+    
+    
+    /**
+     * Gets the number of times each phase has run.
+    **/
+    public long [] getPhaseCounts();
+    
+    
+    /**
+     * Gets the total time spent in each phase, in milliseconds.
+    **/
+    public double [] getPhaseMillis();
+    
+    
+    /**
+     * Gets the time the last run of each phase took, in milliseconds.
+    **/
+    public double [] getLastPhaseMillis();
+    
+    
+    /**
+     * Gets an estimate of the bytes allocated in each phase.
+    **/
+    public long [] getPhaseAllocatedBytes();
+    
+    
+    /**
+     * Gets the number of links agents have tried to make while small world connecting.
+    **/
+    public long getConnectionsAttempted();
+    
+    
+    /**
+     * Gets the number of tries that picked an existing neighbour.
+    **/
+    public long getDuplicatesSkipped();
+    
+    
+    /**
+     * Gets the number of new links made while small world connecting.
+    **/
+    public long getLinksAdded();
+    
+    
+    /**
+     * Gets the share of connection tries that made a new link.
+    **/
+    public double getLinksAddedRatio();
+    
+    
+    /**
+     * Gets the number of propensities worked out for picks.
+    **/
+    public long getPropensityDraws();
+    
+    
+    /**
+     * Gets the number of agent updates done by runs.
+    **/
+    public long getAgentsUpdated();
+    
+    
+    /**
+     * Gets the agent updates per second of time spent running.
+    **/
+    public double getAgentsUpdatedPerSecond();
+    
+    
+    /**
+     * Gets everything as text.
+    **/
+    public String getReport();
+    
+    
+    /**
+     * Gets everything as JSON.
+    **/
+    public String getJSON();
+    
+    
+    /**
+     * Sets everything back to zero.
+    **/
+    public void reset();
+
+// End of interface.
+}
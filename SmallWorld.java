@@ -20,6 +20,7 @@
 
 import java.awt.event.*;
 import java.awt.*;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 
 /**
@@ -28,23 +29,24 @@ import java.util.*;
  * for small world connecting are broadly taken from Duncan J. Watt's 1999 paper 
  * "Networks, Dynamics, and Small World Phenomenon", AJS, 105(2), 493-527. 
  * Similar algorithms can be found in his book "Small Worlds".<P>
+ * This class is just the display and menus - the model itself is in 
+ * SmallWorldEngine, which can also be run without a display.<P>
+ * Small world connecting and running the agents are done on a separate 
+ * worker thread, so the window stays live. While they run, the canvas is 
+ * held and redrawn every SNAPSHOT_INTERVAL milliseconds with the worker 
+ * paused, progress is shown at the bottom of the window, and Run &gt; Cancel 
+ * stops the work at the next chance.<P>
  * To do: Graphing.<P> 
  * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
- * @version 0.15
+ * @version 0.17
  **/
-public class SmallWorld extends Frame implements ActionListener  {
+public class SmallWorld extends Frame implements ActionListener, ProgressListener  {
     
     private GUICanvas canvas = null;		    // Display.
-    private Vector agents = null;		    // Store of agents.
-    private int numberOfAgents = 10;		    // Alter this for more/less agents.
-    private double constant = 0.0000000001;	    // Watt's constant.
-    private double alpha = 15.0;		    // Watt's alpha.
-    private double k = 4.0;			    // Watt's k.
+    private SmallWorldEngine engine = null;	    // Does the work of making, connecting and running agents.
     private int width = 300;			    // Width of application - also used to determine graph radius.
     private int height = 400;			    // Height of application.
-    private int radius = (width/2) - 10;	    // Radius for graph display.
-    private double angle = 360.0 / (double)numberOfAgents;  // Number of degrees for each agent on graph layout.
-    private int runs = 10;                          // Number of iterations to run.
+    private static final int METRIC_SAMPLES = 512;  // Agents to measure path lengths from.
     private MenuItem smallWorldMenuItem = null;	    // Menu option to run smallworld conversion.
     private MenuItem ringWorldMenuItem = null;	    // Menu option to generate a fresh ring world.  
     private MenuItem viewRealMenuItem = null;	    // Menu option to display the real geography.
@@ -52,6 +54,12 @@ public class SmallWorld extends Frame implements ActionListener  {
     private MenuItem runMenuItem = null;	    // Menu option to run the agents.
     private MenuItem importMenuItem = null;	    // Menu option to import the agents.
     private MenuItem saveMenuItem = null;	    // Menu option to save the agents.
+    private MenuItem cancelMenuItem = null;	    // Menu option to stop the worker.
+    private MenuItem optionsMenuItem = null;	    // Menu option to show the options.
+    private Thread worker = null;		    // Thread connecting or running the agents, if any.
+    private volatile boolean cancelled = false;     // Set to ask the worker to stop.
+    private long lastSnapshot = 0;		    // When the worker last showed its progress.
+    private static final long SNAPSHOT_INTERVAL = 500;  // Milliseconds between progress displays.
     private Options options = null;                 // Listener for options menu.
     private Label helpLabel = null;                 // Used for pointing out functionality to users. 
     
@@ -64,6 +72,13 @@ public class SmallWorld extends Frame implements ActionListener  {
 
         super("Small World Agents [1.0]");
         
+        engine = new SmallWorldEngine();
+        engine.setProgressListener(this);
+        
+        // Let the timings be watched with JConsole etc.
+        
+        SimulationStats.getStats().register();
+        
 	MenuBar menuBar = new MenuBar();
 	setMenuBar(menuBar);
 
@@ -99,6 +114,11 @@ public class SmallWorld extends Frame implements ActionListener  {
 	runMenuItem.addActionListener(this);
         runMenuItem.setEnabled(false);
         
+        cancelMenuItem = new MenuItem("Cancel");
+	runMenu.add(cancelMenuItem);
+	cancelMenuItem.addActionListener(this);
+        cancelMenuItem.setEnabled(false);
+        
 	Menu viewMenu = new Menu("View"); 
 	menuBar.add(viewMenu);
 	
@@ -123,7 +143,7 @@ public class SmallWorld extends Frame implements ActionListener  {
         helpMenuItem.addActionListener(help);
         
         
-	MenuItem optionsMenuItem = new MenuItem("Options");
+	optionsMenuItem = new MenuItem("Options");
 	otherMenu.add(optionsMenuItem);
 
         
@@ -183,11 +203,11 @@ public class SmallWorld extends Frame implements ActionListener  {
 	
 	if (ae.getSource() == ringWorldMenuItem) {
 	    
-	    makeAgents();
+	    engine.generateRing();
 
 	    // Paint the agents and allow the user to small world and run it.
 	
-	    canvas.setAgents(agents);
+	    canvas.setAgents(engine.getAgents());
 	    canvas.repaint();
 	    smallWorldMenuItem.setEnabled(true);
 	    runMenuItem.setEnabled(true);
@@ -200,121 +220,10 @@ public class SmallWorld extends Frame implements ActionListener  {
 	} 
 	
 	// Run the small world generation on the current graph. 
-	// XXXX We need to decide on whether to remove the initial ring structure and how.
 	
 	if (ae.getSource() == smallWorldMenuItem) {
-	    
-	    // Number of connections so we can determine small-worldness.
-	    	    
-	    int connections = 0;
-	    
-	    while (connections < (k*numberOfAgents)/2) {
-		
-		// Get a random list of agents.
-		
-		Vector randomAgents = agents;
-		randomAgents = shuffle(randomAgents);
-			
-		// Run through random list of agents and link to one neighbour from each.
-		
-		for (int r = 0; r < randomAgents.size(); r++) {
-		    
-		    Agent agent = (Agent)randomAgents.elementAt(r);
-		    
-		    // Set up some variables to store results, and get a list of its neighbours. Note that our array
-		    // is numberOfAgents long just because I'm too lazy to work out the alternative for agentsNeighbours.size().
-		    
-		    double [] propensities = new double[numberOfAgents];
-		    propensities[r] = -1;
-		    double sumOfPropensities = 0;
-		    
-		    Vector agentsNeighbours = agent.getNeighbours();
-		    
-		    // Run through all the other agents, and find out how many neighbours they have in common
-		    // with our current agent.
-		    
-		    for (int i = 0; i < numberOfAgents; i++) {
-			
-			// If we'return not dealing with the agent we picked, calculate the 
-			// number of mutual neighbours it has with all other agents.
-			
-			if (i != r) {
-			    			    
-			    double neighbours = 0;
-			    
-			    Vector othersNeighbours = ((Agent)agents.elementAt(i)).getNeighbours();
-			    
-			    for (int y = 0; y < othersNeighbours.size(); y++) {
-				
-				if (agentsNeighbours.contains(othersNeighbours.elementAt(y))) {
-				    neighbours++;
-				}
-				
-			    }
-			    
-			    // Use the number of mutual neighbours to calculate propensity 
-			    // of our agent to join with each of the others (with some special conditions 
-			    // to prevent negative numbers coming up).
-			    
-			    if (neighbours == 0) {
-				propensities[i] = constant;
-			    } else if (neighbours >= k) {
-				propensities[i] = 1;
-			    } else {
-				propensities[i] = ((Math.pow( ((((double)neighbours) - 1.0)/k), alpha))*(1.0-constant)) + constant;
-			    }
-			    sumOfPropensities = sumOfPropensities + propensities[i];
-			    
-			} // End of checking we're not testing our agent.
-			
-		    } // End of running through all other agents.
-		    
-		    // Normalize the propensities.
-		    
-		    for (int j = 0; j < propensities.length; j++) {
-			if (propensities[j] > -1) propensities[j] = propensities[j] / sumOfPropensities;
-			else propensities[j] = 0;
-		    }
-		    
-		    // Distribute the propensities for Monte Carlo style picking.
-		    
-		    for (int j = 1; j < (propensities.length - 1); j++) {
-			propensities[j] = propensities[j] + propensities[j-1];
-		    }
-		    
-		    // Given these propensities pick one neighbour and link to it. 
-		    
-		    double randomDouble = Math.random();
-    
-		    int neighbour = propensities.length - 1;
-		    
-		    for (int j = 0; j < propensities.length; j++) {
-			if (randomDouble < propensities[j]) {
-			    neighbour = j;
-			    break;
-			}
-		    }
-		    
-		    // Provided the agents aren't already neighbours, link them.
-		    
-		    Agent neighbourAgent = (Agent)agents.elementAt(neighbour);
-		    
-		    if (agentsNeighbours.contains(agents.elementAt(neighbour)) == false) {
-			agent.addNeighbour(neighbourAgent);
-		    }
-		    if (neighbourAgent.getNeighbours().contains(randomAgents.elementAt(r)) == false) {
-			neighbourAgent.addNeighbour(agent);
-		    }
-		    
-		    connections++;
-		    
-		} // End of looping through each agent.
-		
-	    } // End of testing for small-worldness.
-	    
-	    canvas.repaint();
-	    
-	} // End of small-worlding.
+	    startWork(true);
+	}
 	
 	
 	// Display the real geography.
@@ -338,19 +247,15 @@ public class SmallWorld extends Frame implements ActionListener  {
         // Run through all the agents calling their update methods.
         
         if (ae.getSource() == runMenuItem) {
-            
-            for (int i = 0; i < runs; i++) {
-                
-                Vector randomAgents = agents;
-                randomAgents = shuffle(randomAgents); 
-                
-                for (int r = 0; r < randomAgents.size(); r++) {
-		    Agent agent = (Agent)randomAgents.elementAt(r);
-                    agent.update();
-                }
-                
-            }
-            canvas.repaint();
+            startWork(false);
+        }
+        
+        // Ask the worker to stop.
+        
+        if (ae.getSource() == cancelMenuItem) {
+            cancelled = true;
+            cancelMenuItem.setEnabled(false);
+            helpLabel.setText(" Cancelling...");
         }
         
         
@@ -362,98 +267,117 @@ public class SmallWorld extends Frame implements ActionListener  {
     
     
     /**
-     * Sets up the agents.
-     * Called by making a new ringworld, or by changing the 
-     * number of agents in the options.
+     * Starts small world connecting, or running the agents, on a worker thread.
+     * The menus that would change the agents are turned off until it's done.
     **/
-    private void makeAgents() {
-	
-	// Run through and make new agents.
-	
-	agents = new Vector();
-	Agent lastAgent = null;
-	
-	for (int i = 0; i < numberOfAgents; i++) {
-	    
-	    Agent temp = new Agent();
-	    
-            temp.setName("Agent-" + i);
+    private void startWork(final boolean smallWorldIt) {
+        
+        cancelled = false;
+        lastSnapshot = System.currentTimeMillis();
+        setWorking(true);
+        canvas.setHold(true);
+        helpLabel.setText(smallWorldIt ? " " + AlphaRewiring.TASK + "..." : " " + SmallWorldEngine.RUN_TASK + "...");
+        
+        worker = new Thread(() -> {
             
-	    // Random geographical position.
-	    
-	    int x = (int)(Math.random() * width);
-	    int y = (int)(Math.random() * height);
-	    
-	    temp.setX(x);
-	    temp.setY(y);
-	    
-	    // Calculate graph space display position (works in radians).
-	    
-	    double positionAngle = ((double)i * angle * Math.PI)/180.0;
-	    
-	    int graphX = (int)(radius * Math.sin(positionAngle));
-	    int graphY = (int)(radius * Math.cos(positionAngle));
-	    
-	    temp.setGraphX(graphX);
-	    temp.setGraphY(graphY);
-	    
-	    // Connect each agent with the last one, vice versa,
-	    // and the first and last.
-	    
-	    if (lastAgent != null) {
-		temp.addNeighbour(lastAgent);
-		lastAgent.addNeighbour(temp);
-	    }
-	    
-	    if (i == (numberOfAgents - 1)) {
-		lastAgent = (Agent) agents.elementAt(0);
-		temp.addNeighbour(lastAgent);
-		lastAgent.addNeighbour(temp);
-	    }
-	    
-	    agents.add(temp);
-	    lastAgent = temp;
-	}
-	
-    } // End of makeAgents.
+            String message = null;
+            
+            try {
+                if (smallWorldIt) {
+                    engine.smallWorldIt();
+                    
+                    // Report how small world it is. Large worlds have their path 
+                    // length estimated from a sample of agents to keep this quick.
+                    
+                    message = cancelled ? " Small world connecting cancelled" : " " + engine.measure(METRIC_SAMPLES);
+                } else {
+                    engine.runAgents();
+                    message = cancelled ? " Run cancelled" : " Click on Agents for info";
+                }
+            } catch (RuntimeException re) {
+                re.printStackTrace();
+                message = " Failed: " + re;
+            } finally {
+                final String finished = message;
+                EventQueue.invokeLater(() -> finishWork(finished));
+            }
+            
+        }, "SmallWorld worker");
+        
+        worker.setDaemon(true);
+        worker.start();
+        
+    } // End of startWork.
     
     
     
     
     
-    /** 
-     * Routine for shuffling a Vector.
-     * This is just so we don't have to use any Java 1.2 
-     * Collections etc.
+    /**
+     * Shows the results once the worker has finished, and turns the menus back on.
     **/
-    private Vector shuffle(Vector v) {
-	
-	// Working in arrays is just a good deal easier 
-	// than working out the Vector positions.
-	
-	Object [] vectorArray = new Object[v.size()];
-
-	for (int i = 0; i < numberOfAgents; i++)
-	    vectorArray[i] = v.elementAt(i);
-	
-        for(int i = 0; i < numberOfAgents; i++){
-
-	    int j = (int)(Math.random()*numberOfAgents);
-
-            if (i != j) {
-                Object temp = vectorArray[i];
-		vectorArray[i] = vectorArray[j];
-		vectorArray[j] = temp;
-
+    private void finishWork(String message) {
+        worker = null;
+        canvas.setHold(false);
+        canvas.agentsChanged();
+        canvas.repaint();
+        setWorking(false);
+        helpLabel.setText(message);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Turns the menus on or off for when the worker starts or finishes.
+    **/
+    private void setWorking(boolean working) {
+        ringWorldMenuItem.setEnabled(!working);
+        importMenuItem.setEnabled(!working);
+        saveMenuItem.setEnabled(!working);
+        smallWorldMenuItem.setEnabled(!working);
+        runMenuItem.setEnabled(!working);
+        optionsMenuItem.setEnabled(!working);
+        cancelMenuItem.setEnabled(working);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Shows how the worker is going.
+     * Called on the worker thread, when the agents are safe to look at. 
+     * Every SNAPSHOT_INTERVAL milliseconds the worker waits while the agents 
+     * are drawn and the progress shown. Returns false if the user has cancelled.
+    **/
+    public boolean progress(final String task, final double done) {
+        
+        long now = System.currentTimeMillis();
+        
+        if (now - lastSnapshot >= SNAPSHOT_INTERVAL) {
+            
+            lastSnapshot = now;
+            
+            try {
+                EventQueue.invokeAndWait(() -> {
+                    if (cancelled == false) helpLabel.setText(" " + task + ": " + (int)(done * 100) + "% (Run > Cancel to stop)");
+                    canvas.redraw();
+                    canvas.repaint();
+                });
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (InvocationTargetException ite) {
+                ite.getCause().printStackTrace();
             }
+            
         }
-
-	v.removeAllElements();
-	for (int i = 0; i < numberOfAgents; i++)
-	    v.add(vectorArray[i]);
-	
-	return v;
-    }
+        
+        return (cancelled == false);
+        
+    } // End of progress.
     
     
     
@@ -464,7 +388,7 @@ public class SmallWorld extends Frame implements ActionListener  {
      * Default is 4.0.
     **/
     public void setK (double k) {
-	this.k = k;
+	engine.setK(k);
     }
     
     
@@ -476,7 +400,7 @@ public class SmallWorld extends Frame implements ActionListener  {
      * Default is 15.0.
     **/
     public void setAlpha (double alpha) {
-	this.alpha = alpha;
+	engine.setAlpha(alpha);
     }
     
     
@@ -488,7 +412,7 @@ public class SmallWorld extends Frame implements ActionListener  {
      * Default is 0.0000000001.
     **/
     public void setConstant (double constant) {
-	this.constant = constant;
+	engine.setConstant(constant);
     }
     
     
@@ -500,7 +424,7 @@ public class SmallWorld extends Frame implements ActionListener  {
      * Default is 10.
     **/
     public void setRuns (int iterations) {
-	runs = iterations;
+	engine.setRuns(iterations);
     }
     
     
@@ -514,6 +438,7 @@ public class SmallWorld extends Frame implements ActionListener  {
     **/
     public void setHeight (int height) {
         this.height = height;
+        engine.setHeight(height);
         setSize(width + 12, height + 102);
         canvas.setSize(width,height);
         doLayout();
@@ -530,7 +455,7 @@ public class SmallWorld extends Frame implements ActionListener  {
     **/
     public void setWidth (int width) {
         this.width = width;
-        radius = (width/2) - 10;
+        engine.setWidth(width);
         setSize(width + 12, height + 102);
         canvas.setSize(width,height);
         doLayout();
@@ -542,33 +467,19 @@ public class SmallWorld extends Frame implements ActionListener  {
     
     /**
      * Sets the agents.
-     * We do the cleaning up of missing coordinates in this code 
+     * We do the cleaning up of missing coordinates in the engine 
      * rather than, for example AgentIO, because we know what is 
-     * required to display here - we don't make those assumptions in AgentIO.
+     * required to display there - we don't make those assumptions in AgentIO.
      **/
     public void setAgents(Vector agents) {
         
-        this.agents = agents;
-        
-        // Recalculate the graph space angle incase we need it,
-        // and adjust the number of Agents where appropriate.
+        // Adjust the number of Agents in the options where appropriate.
         
-        if (numberOfAgents != agents.size()) {
-            numberOfAgents = agents.size();
-            angle = 360.0 / (double)numberOfAgents;
-            options.setAgentsField(numberOfAgents);
+        if (engine.getNumberOfAgents() != agents.size()) {
+            options.setAgentsField(agents.size());
         }
         
-        // If necessary, give the default (random) geographical and (circlular) graph space values.
-        
-        for (int i = 0; i < agents.size(); i++) {
-            Agent agent = (Agent)agents.elementAt(i);
-            if (agent.getX() == -1) agent.setX((int)(Math.random() * width));
-            if (agent.getY() == -1) agent.setY((int)(Math.random() * height));
-            double positionAngle = ((double)i * angle * Math.PI)/180.0;
-	    if (agent.getGraphX() == -1) agent.setGraphX((int)(radius * Math.sin(positionAngle)));
-            if (agent.getGraphY() == -1) agent.setGraphY((int)(radius * Math.cos(positionAngle)));
-        }
+        engine.setAgents(agents);
 
         // Set up GUI.
         
@@ -591,7 +502,7 @@ public class SmallWorld extends Frame implements ActionListener  {
      * Used mainly in saving Agents.
     **/   
     public Vector getAgents() {
-        return agents;
+        return engine.getAgents();
     }
     
     
@@ -600,17 +511,19 @@ public class SmallWorld extends Frame implements ActionListener  {
     
     /**
      * Sets the number of agents.
-     * Default is 10.
+     * Default is 10. Ignored while the worker is running.
     **/
     public void setNumberOfAgents (int numberOfAgents) {
 	
-	if (this.numberOfAgents != numberOfAgents) {
-	    
-	    this.numberOfAgents = numberOfAgents;
-	    angle = 360.0 / (double)numberOfAgents;
+	// Leave the agents alone if the worker is using them.
+	
+	if (worker != null) return;
+	
+	if (engine.getNumberOfAgents() != numberOfAgents) {
 	    
-	    makeAgents();
-	    canvas.setAgents(agents);
+	    engine.setNumberOfAgents(numberOfAgents);
+	    engine.generateRing();
+	    canvas.setAgents(engine.getAgents());
 	    
 	    // If we're already showing the first agents, repaint.
 	    
@@ -0,0 +1,430 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Times the main parts of the model, so changes can be checked for 
+ * speed-ups and slow-downs.<P>
+ * Benchmarks ring generation, small world connecting, serial and synchronous 
+ * runs, XML and snapshot export and import, and drawing a GUICanvas into an 
+ * off-screen image, for every combination of the numbers of agents, k and 
+ * alpha given. Each benchmark is run a few times to warm up, then timed over 
+ * a number of iterations, with any setting up (for example, making a fresh 
+ * ring world to connect) left out of the time. Results are printed as a 
+ * table and can be written as JSON laid out like that from JMH, so they can 
+ * be kept and compared between versions with the usual JMH tools.<P>
+ * JMH itself isn't used as it needs benchmarks in a named package, and the 
+ * model's classes are in the default package, where they can't be imported.<P>
+ * Arguments are given as name-value pairs, all of which are optional:
+ * <UL>
+ * <LI>-agents N1,N2,... : numbers of agents (default 1000,10000,100000).</LI>
+ * <LI>-k K1,K2,... : Watt's k values (default 4).</LI>
+ * <LI>-alpha A1,A2,... : Watt's alpha values (default 15).</LI>
+ * <LI>-runs R : iterations in each run benchmark (default 10).</LI>
+ * <LI>-warmup W : untimed iterations before timing (default 2).</LI>
+ * <LI>-iterations I : timed iterations (default 5).</LI>
+ * <LI>-seed S : seed for the random numbers (default 1).</LI>
+ * <LI>-only NAME1,NAME2,... : just run the benchmarks named.</LI>
+ * <LI>-json FILE : write the results to FILE as JSON.</LI>
+ * </UL>
+ * For example: java -Djava.awt.headless=true SmallWorldBenchmark -agents 100000 -k 4,8 -json before.json<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class SmallWorldBenchmark {
+    
+    public static final String [] BENCHMARKS = {"generate", "smallWorld", "runs", "runsSynchronous", 
+        "exportText", "importText", "exportSnapshot", "importSnapshot", "paint"};
+    
+    private int warmup = 2;                 // Untimed iterations.
+    private int iterations = 5;             // Timed iterations.
+    private int runs = 10;                  // Iterations in each run benchmark.
+    private long seed = 1;                  // Seed for each engine.
+    private Set only = null;                // Benchmarks to run, or null for all.
+    private ArrayList results = new ArrayList();    // JSON for each result.
+    
+    
+    
+    
+    
+    /**
+     * Something to time. run does the timed part of one iteration, 
+     * after setUp has been called to get it ready.
+    **/
+    private interface Task {
+        
+        public void setUp() throws Exception;
+        
+        public void run() throws Exception;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Checks that agents read back are as many, with as many links, as those 
+     * written, so a file read the wrong way fails rather than being timed. 
+     * Skipped if the benchmark wasn't run.
+    **/
+    private void checkImport(String name, Vector read, SmallWorldEngine world) {
+        
+        if ((only != null) && !only.contains(name)) return;
+        
+        Vector written = world.getAgents();
+        if ((read == null) || (read.size() != written.size()) || (arcs(read) != arcs(written))) {
+            throw new IllegalStateException(name + " read " + ((read == null) ? 0 : read.size()) + " agents with " + 
+                ((read == null) ? 0 : arcs(read)) + " links, but " + written.size() + " with " + arcs(written) + " were written");
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Counts the neighbours of all the agents.
+    **/
+    private static long arcs(Vector agents) {
+        
+        long arcs = 0;
+        for (int i = 0; i < agents.size(); i++) arcs = arcs + ((Agent)agents.elementAt(i)).getNeighbours().size();
+        return arcs;
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Runs all the benchmarks for one number of agents, k and alpha.
+    **/
+    public void benchmark(final int agents, final double k, final double alpha) throws Exception {
+        
+        String params = "\"agents\" : \"" + agents + "\", \"k\" : \"" + k + "\", \"alpha\" : \"" + alpha + "\"";
+        final File textFile = File.createTempFile("smallworld", ".dat");     // Not .txt, which may be an edge list.
+        final File snapshotFile = File.createTempFile("smallworld", AgentSnapshot.EXTENSION);
+        textFile.deleteOnExit();
+        snapshotFile.deleteOnExit();
+        
+        // A connected world for the benchmarks that don't change its links.
+        
+        final SmallWorldEngine world = engine(agents, k, alpha);
+        world.generateRing();
+        world.smallWorldIt();
+        final AgentIO agentIO = new AgentIO();
+        agentIO.writeAgents(world.getAgents(), textFile);
+        agentIO.writeAgents(world.getAgents(), snapshotFile);
+        
+        final SmallWorldEngine [] engine = new SmallWorldEngine[1];
+        final Vector [] imported = new Vector[1];
+        
+        time("generate", params, new Task() {
+            public void setUp() {
+                engine[0] = engine(agents, k, alpha);
+            }
+            public void run() {
+                engine[0].generateRing();
+            }
+        });
+        
+        time("smallWorld", params, new Task() {
+            public void setUp() {
+                engine[0] = engine(agents, k, alpha);
+                engine[0].generateRing();
+            }
+            public void run() {
+                engine[0].smallWorldIt();
+            }
+        });
+        
+        time("runs", params, new Task() {
+            public void setUp() {
+                world.setSynchronous(false);
+            }
+            public void run() {
+                world.runAgents(runs);
+            }
+        });
+        
+        time("runsSynchronous", params, new Task() {
+            public void setUp() {
+                world.setSynchronous(true);
+            }
+            public void run() {
+                world.runAgents(runs);
+            }
+        });
+        
+        time("exportText", params, new Task() {
+            public void setUp() {
+            }
+            public void run() throws IOException {
+                agentIO.writeAgents(world.getAgents(), textFile);
+            }
+        });
+        
+        time("importText", params, new Task() {
+            public void setUp() {
+            }
+            public void run() throws IOException {
+                imported[0] = agentIO.readAgents(textFile);
+            }
+        });
+        checkImport("importText", imported[0], world);
+        
+        time("exportSnapshot", params, new Task() {
+            public void setUp() {
+            }
+            public void run() throws IOException {
+                agentIO.writeAgents(world.getAgents(), snapshotFile);
+            }
+        });
+        
+        time("importSnapshot", params, new Task() {
+            public void setUp() {
+            }
+            public void run() throws IOException {
+                imported[0] = agentIO.readAgents(snapshotFile);
+            }
+        });
+        checkImport("importSnapshot", imported[0], world);
+        
+        // Drawing uses the graph view, as that's the same size whatever the area.
+        
+        final GUICanvas canvas = new GUICanvas();
+        final BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+        canvas.setSize(400, 400);
+        canvas.setAgents(world.getAgents());
+        canvas.setReal(false);
+        
+        time("paint", params, new Task() {
+            public void setUp() {
+                canvas.agentsChanged();
+            }
+            public void run() {
+                Graphics g = image.getGraphics();
+                try {
+                    canvas.paint(g);
+                } finally {
+                    g.dispose();
+                }
+            }
+        });
+        
+        textFile.delete();
+        snapshotFile.delete();
+        
+    } // End of benchmark.
+    
+    
+    
+    
+    
+    /**
+     * Makes an engine for a benchmark.
+    **/
+    private SmallWorldEngine engine(int agents, double k, double alpha) {
+        SmallWorldEngine engine = new SmallWorldEngine();
+        engine.setNumberOfAgents(agents);
+        engine.setK(k);
+        engine.setAlpha(alpha);
+        engine.setSeed(seed);
+        return engine;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Times a task, if it's one of those asked for, printing and storing the result.
+    **/
+    private void time(String name, String params, Task task) throws Exception {
+        
+        if ((only != null) && !only.contains(name)) return;
+        
+        for (int i = 0; i < warmup; i++) {
+            task.setUp();
+            task.run();
+        }
+        
+        double [] times = new double[iterations];
+        
+        for (int i = 0; i < iterations; i++) {
+            task.setUp();
+            long start = System.nanoTime();
+            task.run();
+            times[i] = (System.nanoTime() - start) / 1.0e6;
+        }
+        
+        // Mean, and the 99.9% confidence interval half-width, as JMH reports.
+        
+        double mean = 0;
+        for (int i = 0; i < times.length; i++) mean = mean + times[i];
+        mean = mean / times.length;
+        
+        double variance = 0;
+        for (int i = 0; i < times.length; i++) variance = variance + (times[i] - mean) * (times[i] - mean);
+        variance = (times.length > 1) ? variance / (times.length - 1) : 0;
+        double error = 3.291 * Math.sqrt(variance / times.length);
+        
+        System.out.println(String.format("%-16s %s  %12.3f +- %10.3f ms/op", name, params.replace("\"", "").replace(" : ", "="), mean, error));
+        
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < times.length; i++) {
+            if (i > 0) raw.append(", ");
+            raw.append(times[i]);
+        }
+        
+        results.add("    {\n" + 
+            "        \"benchmark\" : \"SmallWorldBenchmark." + name + "\",\n" + 
+            "        \"mode\" : \"avgt\",\n" + 
+            "        \"threads\" : 1,\n" + 
+            "        \"warmupIterations\" : " + warmup + ",\n" + 
+            "        \"measurementIterations\" : " + iterations + ",\n" + 
+            "        \"params\" : { " + params + ", \"runs\" : \"" + runs + "\" },\n" + 
+            "        \"primaryMetric\" : {\n" + 
+            "            \"score\" : " + mean + ",\n" + 
+            "            \"scoreError\" : " + error + ",\n" + 
+            "            \"scoreUnit\" : \"ms/op\",\n" + 
+            "            \"rawData\" : [ [ " + raw + " ] ]\n" + 
+            "        }\n" + 
+            "    }");
+        
+    } // End of time.
+    
+    
+    
+    
+    
+    /**
+     * Writes the results so far to a file as JSON.
+    **/
+    public void writeJSON(File file) throws IOException {
+        
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        
+        try {
+            writer.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                writer.write((String)results.get(i));
+                writer.write((i < results.size() - 1) ? ",\n" : "\n");
+            }
+            writer.write("]\n");
+        } finally {
+            writer.close();
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Splits a comma separated list of numbers.
+    **/
+    private static double [] numbers(String list) {
+        StringTokenizer st = new StringTokenizer(list, ",");
+        double [] numbers = new double[st.countTokens()];
+        for (int i = 0; i < numbers.length; i++) numbers[i] = Double.parseDouble(st.nextToken().trim());
+        return numbers;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Runs the benchmarks. See the class description for the arguments.
+    **/
+    public static void main(String[] args) {
+        
+        // The canvas is only drawn off-screen.
+        
+        if (System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+        
+        SmallWorldBenchmark benchmark = new SmallWorldBenchmark();
+        double [] agents = {1000, 10000, 100000};
+        double [] ks = {4};
+        double [] alphas = {15};
+        String json = null;
+        
+        // Read the arguments.
+        
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("No value given for " + args[i]);
+                } else if (args[i].equals("-agents")) {
+                    agents = numbers(args[++i]);
+                } else if (args[i].equals("-k")) {
+                    ks = numbers(args[++i]);
+                } else if (args[i].equals("-alpha")) {
+                    alphas = numbers(args[++i]);
+                } else if (args[i].equals("-runs")) {
+                    benchmark.runs = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-warmup")) {
+                    benchmark.warmup = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-iterations")) {
+                    benchmark.iterations = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-seed")) {
+                    benchmark.seed = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-only")) {
+                    benchmark.only = new HashSet(Arrays.asList(args[++i].split(",")));
+                } else if (args[i].equals("-json")) {
+                    json = args[++i];
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            System.err.println("Usage: java SmallWorldBenchmark [-agents N1,N2] [-k K1,K2] [-alpha A1,A2] [-runs R] " + 
+                "[-warmup W] [-iterations I] [-seed S] [-only NAME1,NAME2] [-json FILE]");
+            System.err.println("Benchmarks: " + String.join(", ", BENCHMARKS));
+            System.exit(1);
+        }
+        
+        try {
+            for (int a = 0; a < agents.length; a++) {
+                for (int b = 0; b < ks.length; b++) {
+                    for (int c = 0; c < alphas.length; c++) {
+                        benchmark.benchmark((int)agents[a], ks[b], alphas[c]);
+                    }
+                }
+            }
+            if (json != null) benchmark.writeJSON(new File(json));
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        
+    } // End of main.
+
+// End of class.
+}
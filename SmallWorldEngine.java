@@ -0,0 +1,920 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The simulation side of the small world model, without any display.<P>
+ * Holds the agents and Watt's parameters, and does the ring world generation,
+ * the small world connecting and the running of the agents. SmallWorld
+ * uses it behind its menus, but it can also be run on its own from the
+ * command line (see main) on machines without a display.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class SmallWorldEngine {
+
+    private Vector agents = null;		    // Store of agents.
+    private AgentGraph graph = null;		    // Store of the agents' links.
+    private int numberOfAgents = 10;		    // Alter this for more/less agents.
+    private double constant = 0.0000000001;	    // Watt's constant.
+    private double alpha = 15.0;		    // Watt's alpha.
+    private double k = 4.0;			    // Watt's k.
+    private int width = 300;			    // Width of the geographical area - also used to determine graph radius.
+    private int height = 400;			    // Height of the geographical area.
+    private int radius = (width/2) - 10;	    // Radius for graph display.
+    private double angle = 360.0 / (double)numberOfAgents;  // Number of degrees for each agent on graph layout.
+    private int runs = 10;                          // Number of iterations to run.
+    private boolean synchronous = false;            // If true, agents update in parallel from last iteration's values.
+    private int parallelism = Runtime.getRuntime().availableProcessors();  // Threads for generating, parallel connecting and synchronous runs.
+    private int topology = AgentGenerator.RING;     // Layout of generated worlds.
+    private int degree = 2;                         // Starting links per agent in generated worlds.
+    private double distanceScale = 0;               // Geographical distance scale for connecting; 0 for none.
+    private boolean parallelConnecting = false;     // If true, small world connecting picks in parallel batches.
+    private boolean exactConnecting = false;        // If true, only new links count towards the connections.
+    private double linksAddedRatio = 0;             // Share of picks that made a link in the last connecting.
+    private SplittableRandom random = new SplittableRandom();  // Source of all the model's random numbers.
+    private CheckpointJournal checkpoint = null;    // Saves each iteration as it's run, if set.
+    private ProgressListener listener = null;	    // Told how long jobs are going, if set.
+
+    public static final String RUN_TASK = "Running agents";	// Task name given to the listener for runs.
+
+
+    /**
+     * Creates a new instance of SmallWorldEngine.
+     * There are no agents until generateRing, generate or setAgents is called.
+    **/
+    public SmallWorldEngine() {
+    }
+
+
+
+
+
+    /**
+     * Sets up a fresh ring world of agents.
+     * Each agent gets a random geographical position and a position on
+     * a circle in graph space, and is linked to the degree / 2 agents either 
+     * side of it round the ring (by default just the next and last ones).
+    **/
+    public Vector generateRing() {
+	return generate(AgentGenerator.RING);
+    }
+
+
+
+
+
+    /**
+     * Sets up a fresh world of agents laid out as set by setTopology.
+    **/
+    public Vector generate() {
+	return generate(topology);
+    }
+
+
+
+
+
+    /**
+     * Sets up a fresh world of agents with the given layout, 
+     * made in parallel by an AgentGenerator.
+    **/
+    private Vector generate(int layout) {
+
+	SimulationStats.Timing timing = SimulationStats.getStats().begin(SimulationStats.GENERATE);
+
+	try {
+	    AgentGenerator generator = new AgentGenerator(numberOfAgents, random.split());
+	    generator.setTopology(layout);
+	    generator.setDegree(degree);
+	    generator.setArea(width, height);
+	    generator.setGraphRadius(radius);
+	    generator.setParallelism(parallelism);
+	    graph = generator.generate();
+
+	    Agent [] made = new Agent[graph.getNumberOfAgents()];
+	    for (int i = 0; i < made.length; i++) made[i] = graph.getAgent(i);
+	    agents = new Vector(Arrays.asList(made));
+	} finally {
+	    timing.end();
+	}
+
+	return agents;
+
+    } // End of generate.
+
+
+
+
+
+    /**
+     * Runs the small world generation on the current graph.
+     * Keeps picking agents in a random order and linking each to one
+     * other agent, chosen on the basis of how many neighbours they have
+     * in common (and how far apart they are, if a distance scale is set),
+     * until k*N/2 connections have been made, or the progress 
+     * listener stops it. The work is done by AlphaRewiring.
+    **/
+    public void smallWorldIt() {
+
+	// XXXX We need to decide on whether to remove the initial ring structure and how.
+
+	if (agents == null) return;
+
+	SimulationStats.Timing timing = SimulationStats.getStats().begin(SimulationStats.SMALL_WORLD);
+
+	try {
+	    AlphaRewiring rewiring = new AlphaRewiring(graph, k, alpha, constant, random.split());
+	    rewiring.setDistanceScale(distanceScale);
+	    if (parallelConnecting) rewiring.setParallelism(parallelism);
+	    rewiring.setExactCounting(exactConnecting);
+	    rewiring.setProgressListener(listener);
+	    rewiring.run();
+	    linksAddedRatio = rewiring.getLinksAddedRatio();
+	    graph.compact();
+	} finally {
+	    timing.end();
+	}
+
+    } // End of smallWorldIt.
+
+
+
+
+
+    /**
+     * Runs through all the agents calling their update methods.
+     * The order is shuffled each iteration, unless the agents are being 
+     * run synchronously, when they are updated in parallel instead. 
+     * The progress listener is told after each iteration, and can stop the run. 
+     * If there's a checkpoint journal, each iteration is saved to it once run, 
+     * with an UncheckedIOException thrown if that fails.
+    **/
+    public void runAgents(int iterations) {
+
+	if (agents == null) return;
+
+	SimulationStats stats = SimulationStats.getStats();
+	SimulationStats.Timing timing = stats.begin(SimulationStats.RUNS);
+
+	try {
+
+	    if (synchronous) {
+		runSynchronously(iterations);
+		return;
+	    }
+
+	    for (int i = 0; i < iterations; i++) {
+
+		Vector randomAgents = agents;
+		randomAgents = shuffle(randomAgents);
+
+		// If saving changes, note the agents whose values 
+		// change, handing them to the graph a bufferful at a time.
+
+		boolean recording = graph.isRecordingChanges();
+		int [] changed = (recording) ? new int[UpdateTask.BLOCK] : null;
+		int count = 0;
+
+		for (int r = 0; r < randomAgents.size(); r++) {
+		    Agent agent = (Agent)randomAgents.elementAt(r);
+		    double before = agent.getValue();
+		    agent.update(random);
+		    if (recording && (Double.doubleToRawLongBits(agent.getValue()) != Double.doubleToRawLongBits(before))) {
+			changed[count++] = agent.getId();
+			if (count == changed.length) {
+			    graph.valuesChanged(changed, count);
+			    count = 0;
+			}
+		    }
+		}
+
+		if (count > 0) graph.valuesChanged(changed, count);
+
+		stats.addAgentsUpdated(randomAgents.size());
+		saveIteration();
+		if (report(RUN_TASK, (i + 1) / (double)iterations) == false) break;
+
+	    }
+
+	} finally {
+	    timing.end();
+	}
+
+    } // End of runAgents.
+
+
+
+
+
+    /**
+     * Runs the agents in parallel on a ForkJoinPool.
+     * Each iteration all the agents store their value as their previous 
+     * value, and then all of them update, reading their neighbours' 
+     * previous values. As no agent sees another's new value, the result 
+     * doesn't depend on the order or the number of threads.
+    **/
+    private void runSynchronously(int iterations) {
+
+	ForkJoinPool pool = new ForkJoinPool(parallelism);
+	int size = graph.getNumberOfAgents();
+
+	// Each block of agents gets its own random number stream, split off 
+	// in order, so the numbers each agent sees don't depend on which thread runs it.
+
+	SplittableRandom [] streams = new SplittableRandom[(size + UpdateTask.BLOCK - 1) / UpdateTask.BLOCK];
+
+	try {
+	    for (int i = 0; i < iterations; i++) {
+		for (int j = 0; j < streams.length; j++) streams[j] = random.split();
+		pool.invoke(new UpdateTask(graph, 0, size, true, streams));
+		pool.invoke(new UpdateTask(graph, 0, size, false, streams));
+		SimulationStats.getStats().addAgentsUpdated(size);
+		saveIteration();
+		if (report(RUN_TASK, (i + 1) / (double)iterations) == false) break;
+	    }
+	} finally {
+	    pool.shutdown();
+	}
+
+    } // End of runSynchronously.
+
+
+
+
+
+    /**
+     * Saves an iteration to the checkpoint journal, if there is one.
+    **/
+    private void saveIteration() {
+
+	if (checkpoint == null) return;
+
+	try {
+	    checkpoint.iterationDone();
+	} catch (IOException ioe) {
+	    throw new UncheckedIOException(ioe);
+	}
+
+    }
+
+
+
+
+
+    /**
+     * Runs the agents for the number of iterations set with setRuns.
+    **/
+    public void runAgents() {
+	runAgents(runs);
+    }
+
+
+
+
+
+    /**
+     * Measures how small world the agents' network is.
+     * Path lengths are measured from the given number of randomly 
+     * picked agents, or from all of them if samples is 0. 
+     * Returns null if there are no agents.
+    **/
+    public SmallWorldMetrics measure(int samples) {
+
+	if (graph == null) return null;
+
+	SimulationStats.Timing timing = SimulationStats.getStats().begin(SimulationStats.METRICS);
+
+	try {
+	    SmallWorldMetrics metrics = new SmallWorldMetrics(graph, random.split());
+	    metrics.setSamples(samples);
+	    metrics.setParallelism(parallelism);
+	    metrics.measure();
+	    return metrics;
+	} finally {
+	    timing.end();
+	}
+
+    }
+
+
+
+
+
+    /**
+     * Routine for shuffling a Vector.
+     * This is just so we don't have to use any Java 1.2
+     * Collections etc.
+    **/
+    private Vector shuffle(Vector v) {
+
+	// Working in arrays is just a good deal easier
+	// than working out the Vector positions.
+
+	int size = v.size();
+	Object [] vectorArray = new Object[size];
+
+	for (int i = 0; i < size; i++)
+	    vectorArray[i] = v.elementAt(i);
+
+        for(int i = 0; i < size; i++){
+
+	    int j = random.nextInt(size);
+
+            if (i != j) {
+                Object temp = vectorArray[i];
+		vectorArray[i] = vectorArray[j];
+		vectorArray[j] = temp;
+
+            }
+        }
+
+	v.removeAllElements();
+	for (int i = 0; i < size; i++)
+	    v.add(vectorArray[i]);
+
+	return v;
+    }
+
+
+
+
+
+    /**
+     * Sets the agents.
+     * Their links are moved into a new AgentGraph, unless they are already 
+     * in one of their own. Missing geographical coordinates are given random values within the
+     * width and height, and missing graph space coordinates are laid out on a circle.
+    **/
+    public void setAgents(Vector agents) {
+
+        this.agents = agents;
+        graph = findGraph(agents);
+        if (graph == null) graph = new AgentGraph(agents);
+
+        // Recalculate the graph space angle incase we need it,
+        // and adjust the number of Agents where appropriate.
+
+        if (numberOfAgents != agents.size()) {
+            numberOfAgents = agents.size();
+            angle = 360.0 / (double)numberOfAgents;
+        }
+
+        // If necessary, give the default (random) geographical and (circlular) graph space values.
+
+        for (int i = 0; i < agents.size(); i++) {
+            Agent agent = (Agent)agents.elementAt(i);
+            if (agent.getX() == -1) agent.setX(random.nextInt(width));
+            if (agent.getY() == -1) agent.setY(random.nextInt(height));
+            double positionAngle = ((double)i * angle * Math.PI)/180.0;
+	    if (agent.getGraphX() == -1) agent.setGraphX((int)(radius * Math.sin(positionAngle)));
+            if (agent.getGraphY() == -1) agent.setGraphY((int)(radius * Math.cos(positionAngle)));
+        }
+
+    } // End of setAgents.
+
+
+
+
+
+    /**
+     * Checks whether the agents are already in an AgentGraph of their own, 
+     * in the same order, as they are when read by AgentReader. 
+     * Returns the graph if so, or null if not.
+    **/
+    private AgentGraph findGraph(Vector agents) {
+
+        if (agents.isEmpty()) return null;
+
+        AgentGraph found = ((Agent)agents.elementAt(0)).getGraph();
+        if ((found == null) || (found.getNumberOfAgents() != agents.size())) return null;
+
+        for (int i = 0; i < agents.size(); i++) {
+            if (found.getAgent(i) != agents.elementAt(i)) return null;
+        }
+        return found;
+
+    }
+
+
+
+
+
+    /**
+     * Gets the Agents.
+     * Returns null if none have been made or set.
+    **/
+    public Vector getAgents() {
+        return agents;
+    }
+
+
+
+
+
+    /**
+     * Gets the AgentGraph holding the agents' links.
+     * Returns null if there are no agents.
+    **/
+    public AgentGraph getGraph() {
+        return graph;
+    }
+
+
+
+
+
+    /**
+     * Sets the layout of worlds made by generate: AgentGenerator.RING, 
+     * LATTICE or GEOMETRIC. Default is RING.
+    **/
+    public void setTopology (int topology) {
+	if ((topology < AgentGenerator.RING) || (topology > AgentGenerator.GEOMETRIC)) {
+	    throw new IllegalArgumentException("Unknown topology " + topology);
+	}
+	this.topology = topology;
+    }
+
+
+
+
+
+    /**
+     * Sets the number of starting links per agent in generated worlds 
+     * (see AgentGenerator.setDegree). Default is 2.
+    **/
+    public void setDegree (int degree) {
+	if (degree < 0) throw new IllegalArgumentException("Degree can't be negative");
+	this.degree = degree;
+    }
+
+
+
+
+
+    /**
+     * Sets the number of agents used by generateRing and generate.
+     * Default is 10.
+    **/
+    public void setNumberOfAgents (int numberOfAgents) {
+	this.numberOfAgents = numberOfAgents;
+	angle = 360.0 / (double)numberOfAgents;
+    }
+
+
+
+
+
+    /**
+     * Gets the number of agents.
+    **/
+    public int getNumberOfAgents () {
+	return numberOfAgents;
+    }
+
+
+
+
+
+    /**
+     * Sets the level of Watt's K.
+     * Default is 4.0.
+    **/
+    public void setK (double k) {
+	this.k = k;
+    }
+
+
+
+
+
+    /**
+     * Sets the level of Watt's alpha.
+     * Default is 15.0.
+    **/
+    public void setAlpha (double alpha) {
+	this.alpha = alpha;
+    }
+
+
+
+
+
+    /**
+     * Sets the level of Watt's constant.
+     * Default is 0.0000000001.
+    **/
+    public void setConstant (double constant) {
+	this.constant = constant;
+    }
+
+
+
+
+
+    /**
+     * Sets the distance over which the propensity of agents to connect 
+     * falls by a factor of e, making the small world connecting geographical 
+     * (see AlphaRewiring.setDistanceScale). Default is 0, ignoring geography.
+    **/
+    public void setDistanceScale (double distanceScale) {
+	if (distanceScale < 0) throw new IllegalArgumentException("Distance scale can't be negative");
+	this.distanceScale = distanceScale;
+    }
+
+
+
+
+
+    /**
+     * Sets whether the small world connecting picks for batches of agents 
+     * in parallel, using the parallelism set, rather than one at a time 
+     * (see AlphaRewiring.setParallelism). Default is false.
+    **/
+    public void setParallelConnecting (boolean parallelConnecting) {
+	this.parallelConnecting = parallelConnecting;
+    }
+
+
+
+
+
+    /**
+     * Sets whether the small world connecting counts only new links towards 
+     * the k*N/2 connections, never picking existing neighbours 
+     * (see AlphaRewiring.setExactCounting). Default is false.
+    **/
+    public void setExactConnecting (boolean exactConnecting) {
+	this.exactConnecting = exactConnecting;
+    }
+
+
+
+
+
+    /**
+     * Sets a journal to save each iteration to as the agents are run, 
+     * or null for none. The journal should already have been started 
+     * on the agents' graph (see CheckpointJournal.start). Default is none.
+    **/
+    public void setCheckpoint (CheckpointJournal checkpoint) {
+	this.checkpoint = checkpoint;
+    }
+
+
+
+
+
+    /**
+     * Gets the share of picks in the last small world connecting that 
+     * made a new link.
+    **/
+    public double getLinksAddedRatio () {
+	return linksAddedRatio;
+    }
+
+
+
+
+
+    /**
+     * Sets the number of iterations to run.
+     * Default is 10.
+    **/
+    public void setRuns (int iterations) {
+	runs = iterations;
+    }
+
+
+
+
+
+    /**
+     * Sets whether the agents are run synchronously.
+     * If true, each iteration updates all the agents in parallel from the 
+     * values they had at the end of the last one (see Agent.getPreviousValue). 
+     * If false, agents update one at a time in a random order, seeing 
+     * any changes already made that iteration. Default is false.
+    **/
+    public void setSynchronous (boolean synchronous) {
+	this.synchronous = synchronous;
+    }
+
+
+
+
+
+    /**
+     * Seeds the random numbers used by the model.
+     * Ring world positions, shuffling, small world picks and agent updates 
+     * all draw from the one seeded source (split into separate streams where 
+     * they run in parallel), so two runs with the same seed and settings 
+     * give the same agents. By default the seed is different each time.
+    **/
+    public void setSeed (long seed) {
+	random = new SplittableRandom(seed);
+    }
+
+
+
+
+
+    /**
+     * Sets the source of random numbers used by the model.
+    **/
+    public void setRandom (SplittableRandom random) {
+	this.random = random;
+    }
+
+
+
+
+
+    /**
+     * Sets the number of threads used for generating, parallel connecting and synchronous runs.
+     * Default is the number of processors.
+    **/
+    public void setParallelism (int parallelism) {
+	if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+	this.parallelism = parallelism;
+    }
+
+
+
+
+
+    /**
+     * Sets a listener to be told how small world connecting and 
+     * runs are going, and which can stop them. Set to null for none.
+    **/
+    public void setProgressListener (ProgressListener listener) {
+	this.listener = listener;
+    }
+
+
+
+
+
+    /**
+     * Tells the progress listener, if there is one, how a task is going.
+     * Returns false if the task should stop.
+    **/
+    private boolean report (String task, double done) {
+	return (listener == null) || listener.progress(task, done);
+    }
+
+
+
+
+
+    /**
+     * Sets the width of the geographical area.
+     * Also sets the graph space radius. Default is 300.
+    **/
+    public void setWidth (int width) {
+	this.width = width;
+	radius = (width/2) - 10;
+    }
+
+
+
+
+
+    /**
+     * Sets the height of the geographical area.
+     * Default is 400.
+    **/
+    public void setHeight (int height) {
+	this.height = height;
+    }
+
+
+
+
+
+    /**
+     * Runs the model without a display.<P>
+     * Arguments are given as name-value pairs, all of which are optional:
+     * <UL>
+     * <LI>-agents N : number of agents to generate (default 10).</LI>
+     * <LI>-topology ring|lattice|geometric : layout of the generated world (default ring).</LI>
+     * <LI>-degree D : starting links per generated agent (default 2).</LI>
+     * <LI>-k K, -alpha A, -constant C : Watt's parameters.</LI>
+     * <LI>-distancescale D : make the connecting geographical, with propensity 
+     * falling by e every D units of distance.</LI>
+     * <LI>-width W, -height H : size of the geographical area.</LI>
+     * <LI>-runs R : number of iterations to run the agents for (default 10).</LI>
+     * <LI>-seed S : seed for the random numbers, so runs can be repeated.</LI>
+     * <LI>-synchronous : update the agents in parallel from the last iteration's values.</LI>
+     * <LI>-exactconnect : count only new links when small world connecting.</LI>
+     * <LI>-parallelconnect : pick for batches of agents in parallel when small world connecting.</LI>
+     * <LI>-threads T : number of threads for generating, parallel connecting and synchronous runs 
+     * (default the number of processors).</LI>
+     * <LI>-in FILE : import agents from FILE instead of generating a world. 
+     * FILE can be an XML agent file, a binary snapshot, GraphML, 
+     * or an edge list, adjacency list or CSV edge table. Gzipped files are read too.</LI>
+     * <LI>-out FILE : save the agents to FILE when finished; as a binary 
+     * snapshot if FILE ends with .sws (see AgentSnapshot), gzipped if it ends with .gz.</LI>
+     * <LI>-nosmallworld : skip the small world connecting.</LI>
+     * <LI>-metrics : print the clustering coefficient, path length and small world indices.</LI>
+     * <LI>-samples S : estimate path length from S random agents rather than all of them.</LI>
+     * <LI>-stats SECONDS : print the SimulationStats every SECONDS seconds, and at the end. 
+     * 0 prints them just at the end.</LI>
+     * <LI>-statsjson FILE : write the SimulationStats to FILE as JSON, when printing them.</LI>
+     * <LI>-checkpoint PREFIX : save the run as it goes to files starting PREFIX 
+     * (see CheckpointJournal).</LI>
+     * <LI>-checkpointevery N : iterations between whole snapshots when checkpointing (default 100).</LI>
+     * <LI>-resume : carry on from the last checkpoint, if there is one, for the rest of the runs, 
+     * rather than setting up and connecting the agents.</LI>
+     * </UL>
+     * If either stats option is given, the stats are also registered with JMX.
+     * For example: java SmallWorldEngine -agents 100000 -runs 20 -out world.sws
+    **/
+    public static void main(String[] args) {
+
+	SmallWorldEngine engine = new SmallWorldEngine();
+	String in = null;
+	String out = null;
+	boolean smallWorld = true;
+	boolean metrics = false;
+	int samples = 0;
+	long statsPeriod = -1;
+	File statsFile = null;
+	File checkpointPrefix = null;
+	int checkpointEvery = 100;
+	boolean resume = false;
+
+	// Read the arguments.
+
+	try {
+	    for (int i = 0; i < args.length; i++) {
+		if (args[i].equals("-nosmallworld")) {
+		    smallWorld = false;
+		} else if (args[i].equals("-metrics")) {
+		    metrics = true;
+		} else if (args[i].equals("-exactconnect")) {
+		    engine.setExactConnecting(true);
+		} else if (args[i].equals("-parallelconnect")) {
+		    engine.setParallelConnecting(true);
+		} else if (args[i].equals("-resume")) {
+		    resume = true;
+		} else if (args[i].equals("-synchronous")) {
+		    engine.setSynchronous(true);
+		} else if (i + 1 >= args.length) {
+		    throw new IllegalArgumentException("No value given for " + args[i]);
+		} else if (args[i].equals("-agents")) {
+		    engine.setNumberOfAgents(Integer.parseInt(args[++i]));
+		} else if (args[i].equals("-topology")) {
+		    String name = args[++i];
+		    if (name.equals("ring")) {
+			engine.setTopology(AgentGenerator.RING);
+		    } else if (name.equals("lattice")) {
+			engine.setTopology(AgentGenerator.LATTICE);
+		    } else if (name.equals("geometric")) {
+			engine.setTopology(AgentGenerator.GEOMETRIC);
+		    } else {
+			throw new IllegalArgumentException("Unknown topology " + name);
+		    }
+		} else if (args[i].equals("-degree")) {
+		    engine.setDegree(Integer.parseInt(args[++i]));
+		} else if (args[i].equals("-k")) {
+		    engine.setK(Double.parseDouble(args[++i]));
+		} else if (args[i].equals("-alpha")) {
+		    engine.setAlpha(Double.parseDouble(args[++i]));
+		} else if (args[i].equals("-constant")) {
+		    engine.setConstant(Double.parseDouble(args[++i]));
+		} else if (args[i].equals("-distancescale")) {
+		    engine.setDistanceScale(Double.parseDouble(args[++i]));
+		} else if (args[i].equals("-width")) {
+		    engine.setWidth(Integer.parseInt(args[++i]));
+		} else if (args[i].equals("-height")) {
+		    engine.setHeight(Integer.parseInt(args[++i]));
+		} else if (args[i].equals("-runs")) {
+		    engine.setRuns(Integer.parseInt(args[++i]));
+		} else if (args[i].equals("-seed")) {
+		    engine.setSeed(Long.parseLong(args[++i]));
+		} else if (args[i].equals("-threads")) {
+		    engine.setParallelism(Integer.parseInt(args[++i]));
+		} else if (args[i].equals("-samples")) {
+		    samples = Integer.parseInt(args[++i]);
+		} else if (args[i].equals("-stats")) {
+		    statsPeriod = (long)(Double.parseDouble(args[++i]) * 1000);
+		} else if (args[i].equals("-statsjson")) {
+		    statsFile = new File(args[++i]);
+		    if (statsPeriod < 0) statsPeriod = 0;
+		} else if (args[i].equals("-checkpoint")) {
+		    checkpointPrefix = new File(args[++i]);
+		} else if (args[i].equals("-checkpointevery")) {
+		    checkpointEvery = Integer.parseInt(args[++i]);
+		    if (checkpointEvery < 1) throw new IllegalArgumentException("-checkpointevery must be at least 1");
+		} else if (args[i].equals("-in")) {
+		    in = args[++i];
+		} else if (args[i].equals("-out")) {
+		    out = args[++i];
+		} else {
+		    throw new IllegalArgumentException("Unknown option " + args[i]);
+		}
+	    }
+	} catch (IllegalArgumentException iae) {
+	    System.err.println(iae.getMessage());
+	    System.err.println("Usage: java SmallWorldEngine [-agents N] [-topology ring|lattice|geometric] [-degree D] [-k K] [-alpha A] [-constant C] [-distancescale D] " +
+		"[-width W] [-height H] [-runs R] [-seed S] [-synchronous] [-exactconnect] [-parallelconnect] [-threads T] [-in FILE] [-out FILE] [-nosmallworld] [-metrics] [-samples S] " +
+		"[-stats SECONDS] [-statsjson FILE] [-checkpoint PREFIX] [-checkpointevery N] [-resume]");
+	    System.exit(1);
+	}
+
+	// Watch the stats if asked.
+
+	SimulationStats stats = SimulationStats.getStats();
+	if (statsPeriod >= 0) {
+	    stats.register();
+	    if (statsPeriod > 0) stats.startDumping(statsPeriod, System.out, statsFile);
+	}
+
+	// Set up, connect and run the agents, then save them if asked.
+
+	try {
+
+	    AgentIO agentIO = new AgentIO();
+	    CheckpointJournal checkpoint = null;
+	    if (checkpointPrefix != null) checkpoint = new CheckpointJournal(checkpointPrefix, checkpointEvery);
+	    int runs = engine.runs;
+
+	    long time = System.currentTimeMillis();
+	    if (resume && (checkpoint != null) && checkpoint.exists()) {
+		engine.setAgents(checkpoint.resume());
+		runs = Math.max(0, runs - checkpoint.getIteration());
+		smallWorld = false;
+		System.out.println("Resumed after iteration " + checkpoint.getIteration());
+	    } else if (in != null) {
+		engine.setAgents(agentIO.readAgents(new File(in)));
+	    } else {
+		engine.generate();
+	    }
+	    System.out.println("Agents: " + engine.getAgents().size() + " (" +
+		(System.currentTimeMillis() - time) + " ms)");
+
+	    if (smallWorld) {
+		time = System.currentTimeMillis();
+		engine.smallWorldIt();
+		System.out.println("Small world connecting: " + (System.currentTimeMillis() - time) + " ms, " + 
+		    String.format("%.3f", engine.getLinksAddedRatio()) + " of picks made links");
+	    }
+
+	    if (metrics) {
+		time = System.currentTimeMillis();
+		SmallWorldMetrics measured = engine.measure(samples);
+		System.out.println(measured + " (" + (System.currentTimeMillis() - time) + " ms)");
+	    }
+
+	    time = System.currentTimeMillis();
+	    if (checkpoint != null) {
+		checkpoint.start(engine.getGraph());
+		engine.setCheckpoint(checkpoint);
+	    }
+	    engine.runAgents(runs);
+	    if (checkpoint != null) checkpoint.close();
+	    System.out.println("Runs: " + runs + " (" + (System.currentTimeMillis() - time) + " ms)");
+
+	    if (out != null) {
+		time = System.currentTimeMillis();
+		agentIO.writeAgents(engine.getAgents(), new File(out));
+		System.out.println("Saved: " + out + " (" + (System.currentTimeMillis() - time) + " ms)");
+	    }
+
+	} catch (IOException ioe) {
+	    ioe.printStackTrace();
+	    System.exit(1);
+	} catch (UncheckedIOException uioe) {
+	    uioe.getCause().printStackTrace();
+	    System.exit(1);
+	}
+
+	if (statsPeriod >= 0) {
+	    stats.stopDumping();
+	    stats.dump(System.out, statsFile);
+	}
+
+    } // End of main.
+
+// End of class.
+}
@@ -0,0 +1,464 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+/**
+ * Measures how small world the network of a set of agents is.<P>
+ * Works out Watt's clustering coefficient C (the average, over all the agents, 
+ * of the fraction of pairs of neighbours that are themselves linked) and 
+ * characteristic path length L (the average number of links on the shortest 
+ * path between two agents, over all pairs that are connected). From these 
+ * it gives the sigma and omega small world indices:
+ * <UL>
+ * <LI>sigma = (C / Cr) / (L / Lr), which is well above 1 for a small world.</LI>
+ * <LI>omega = Lr / L - C / Cl, which is near 0 for a small world, near -1 for a 
+ * lattice and near 1 for a random network.</LI>
+ * </UL>
+ * Cr = k/N and Lr = ln(N)/ln(k) are the usual estimates for a random network 
+ * with N agents and average degree k, and Cl = 3(k-2)/(4(k-1)) is the clustering 
+ * of a ring lattice, as given in Watt's "Small Worlds". Estimates are used 
+ * rather than building matching random networks, as those would cost as 
+ * much to measure as the network itself.<P>
+ * Path lengths are found with breadth first searches run 64 at a time, one 
+ * per bit of a long, so each sweep through the links serves 64 searches. Groups 
+ * of 64 run in parallel. For large networks L can be estimated from a random 
+ * sample of starting agents (see setSamples). Links are treated as two-way.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class SmallWorldMetrics {
+    
+    private AgentGraph graph = null;            // Network to measure.
+    private int samples = 0;                    // Agents to start path searches from; 0 means all.
+    private int parallelism = Runtime.getRuntime().availableProcessors();  // Threads to use.
+    private SplittableRandom random = null;     // Used to pick the sample.
+    private double clustering = 0;              // Clustering coefficient C.
+    private double pathLength = 0;              // Characteristic path length L.
+    private long connectedPairs = 0;            // Pairs of agents (from the sources) with a path between.
+    private long unconnectedPairs = 0;          // Pairs of agents (from the sources) with none.
+    
+    
+    /** 
+     * Creates a new instance of SmallWorldMetrics for a network.
+     * Nothing is measured until measure is called.
+    **/
+    public SmallWorldMetrics(AgentGraph graph, SplittableRandom random) {
+        this.graph = graph;
+        this.random = random;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the number of agents path lengths are measured from.
+     * If 0, or more than there are agents, all agents are used and L is exact, 
+     * otherwise L is estimated from a random sample of that many. Default is 0.
+    **/
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Sets the number of threads to use.
+     * Default is the number of processors.
+    **/
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Measures the clustering coefficient and path length.
+    **/
+    public void measure() {
+        
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        
+        try {
+            clustering = pool.submit(() -> measureClustering()).get();
+            pool.submit(() -> measurePathLength()).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            throw new RuntimeException(ee.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Works out the average local clustering coefficient.
+     * For each agent, its neighbours are marked, and then each neighbour's 
+     * neighbours are checked for marks, which finds each link between 
+     * neighbours twice. Agents with fewer than two neighbours count as 0.
+    **/
+    private double measureClustering() {
+        
+        int size = graph.getNumberOfAgents();
+        if (size == 0) return 0;
+        
+        ThreadLocal marks = ThreadLocal.withInitial(() -> new int[size]);
+        
+        double total = IntStream.range(0, size).parallel().mapToDouble(v -> {
+            
+            int degree = graph.getDegree(v);
+            if (degree < 2) return 0;
+            
+            int [] mark = (int [])marks.get();
+            int [] targets = graph.getTargets();
+            int start = graph.getOffset(v);
+            int stamp = v + 1;
+            
+            for (int i = start; i < start + degree; i++) mark[targets[i]] = stamp;
+            
+            long links = 0;
+            
+            for (int i = start; i < start + degree; i++) {
+                int u = targets[i];
+                int uStart = graph.getOffset(u);
+                int uEnd = uStart + graph.getDegree(u);
+                for (int j = uStart; j < uEnd; j++) {
+                    if (mark[targets[j]] == stamp) links++;
+                }
+            }
+            
+            // Clear our marks, as stamps could repeat on another thread's agent.
+            
+            for (int i = start; i < start + degree; i++) mark[targets[i]] = 0;
+            
+            return (double)links / ((double)degree * (degree - 1));
+            
+        }).sum();
+        
+        return total / size;
+        
+    } // End of measureClustering.
+    
+    
+    
+    
+    
+    /**
+     * Works out the characteristic path length, from all or a sample of agents.
+    **/
+    private void measurePathLength() {
+        
+        int size = graph.getNumberOfAgents();
+        int [] sources = pickSources(size);
+        int groups = (sources.length + 63) / 64;
+        
+        LongAdder distance = new LongAdder();
+        LongAdder connected = new LongAdder();
+        
+        ThreadLocal buffers = ThreadLocal.withInitial(() -> new SearchBuffer(size));
+        
+        IntStream.range(0, groups).parallel().forEach(group -> {
+            SearchBuffer buffer = (SearchBuffer)buffers.get();
+            long [] result = search(sources, group * 64, Math.min(sources.length, group * 64 + 64), buffer);
+            distance.add(result[0]);
+            connected.add(result[1]);
+        });
+        
+        connectedPairs = connected.sum();
+        unconnectedPairs = (long)sources.length * (size - 1) - connectedPairs;
+        pathLength = (connectedPairs == 0) ? 0 : (double)distance.sum() / connectedPairs;
+        
+    } // End of measurePathLength.
+    
+    
+    
+    
+    
+    /**
+     * Runs up to 64 breadth first searches at once, from sources[from] to 
+     * sources[to - 1]. Bit b of seen[v] is set when search b reaches agent v, 
+     * and frontier holds the bits for agents reached at the last level, 
+     * which are also listed in a queue so levels only look at those agents. 
+     * Returns the total distance found and the number of agents reached, 
+     * not counting the sources themselves.
+    **/
+    private long [] search(int [] sources, int from, int to, SearchBuffer buffer) {
+        
+        long [] seen = buffer.seen;
+        long [] frontier = buffer.frontier;
+        long [] next = buffer.next;
+        int [] queue = buffer.queue;
+        int [] nextQueue = buffer.nextQueue;
+        int queued = 0;
+        
+        Arrays.fill(seen, 0);
+        
+        for (int b = 0; b < to - from; b++) {
+            int source = sources[from + b];
+            if (frontier[source] == 0) queue[queued++] = source;
+            seen[source] |= 1L << b;
+            frontier[source] |= 1L << b;
+        }
+        
+        long distance = 0;
+        long reached = 0;
+        int [] targets = graph.getTargets();
+        
+        for (int level = 1; queued > 0; level++) {
+            
+            int nextQueued = 0;
+            
+            for (int q = 0; q < queued; q++) {
+                
+                int v = queue[q];
+                long bits = frontier[v];
+                frontier[v] = 0;
+                
+                int start = graph.getOffset(v);
+                int end = start + graph.getDegree(v);
+                
+                for (int i = start; i < end; i++) {
+                    int u = targets[i];
+                    long fresh = bits & ~seen[u];
+                    if (fresh != 0) {
+                        if (next[u] == 0) nextQueue[nextQueued++] = u;
+                        seen[u] |= fresh;
+                        next[u] |= fresh;
+                        int count = Long.bitCount(fresh);
+                        distance = distance + (long)level * count;
+                        reached = reached + count;
+                    }
+                }
+            }
+            
+            // Swap the levels over. The old frontier has been cleared as we went.
+            
+            long [] temp = frontier;
+            frontier = next;
+            next = temp;
+            int [] tempQueue = queue;
+            queue = nextQueue;
+            nextQueue = tempQueue;
+            queued = nextQueued;
+        }
+        
+        buffer.frontier = frontier;
+        buffer.next = next;
+        buffer.queue = queue;
+        buffer.nextQueue = nextQueue;
+        
+        return new long [] {distance, reached};
+        
+    } // End of search.
+    
+    
+    
+    
+    
+    /**
+     * Gets the agents to measure path lengths from.
+     * Either all of them, or a random sample without repeats.
+    **/
+    private int [] pickSources(int size) {
+        
+        int [] all = new int[size];
+        for (int i = 0; i < size; i++) all[i] = i;
+        
+        if ((samples <= 0) || (samples >= size)) return all;
+        
+        for (int i = 0; i < samples; i++) {
+            int j = i + random.nextInt(size - i);
+            int temp = all[i];
+            all[i] = all[j];
+            all[j] = temp;
+        }
+        return Arrays.copyOf(all, samples);
+        
+    }
+    
+    
+    
+    
+    
+    /**
+     * Working arrays for one thread's searches, kept between groups of searches.
+     * frontier and next are left all zero after each search.
+    **/
+    private static class SearchBuffer {
+        
+        long [] seen = null;
+        long [] frontier = null;
+        long [] next = null;
+        int [] queue = null;
+        int [] nextQueue = null;
+        
+        SearchBuffer(int size) {
+            seen = new long[size];
+            frontier = new long[size];
+            next = new long[size];
+            queue = new int[size];
+            nextQueue = new int[size];
+        }
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the clustering coefficient C.
+    **/
+    public double getClusteringCoefficient() {
+        return clustering;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the characteristic path length L.
+     * Pairs of agents with no path between them are left out.
+    **/
+    public double getPathLength() {
+        return pathLength;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of pairs of agents that had no path between them.
+     * If more than 0, the network is in more than one piece, and L only 
+     * covers the pairs that are connected. Counts pairs from sampled agents only.
+    **/
+    public long getUnconnectedPairs() {
+        return unconnectedPairs;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the average number of neighbours, k.
+    **/
+    public double getAverageDegree() {
+        int size = graph.getNumberOfAgents();
+        return (size == 0) ? 0 : (double)graph.getNumberOfArcs() / size;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the estimated clustering coefficient of a random network, k/N.
+    **/
+    public double getRandomClustering() {
+        return getAverageDegree() / graph.getNumberOfAgents();
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the estimated path length of a random network, ln(N)/ln(k).
+    **/
+    public double getRandomPathLength() {
+        return Math.log(graph.getNumberOfAgents()) / Math.log(getAverageDegree());
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the clustering coefficient of a ring lattice, 3(k-2)/(4(k-1)).
+    **/
+    public double getLatticeClustering() {
+        double k = getAverageDegree();
+        return (3.0 * (k - 2.0)) / (4.0 * (k - 1.0));
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the small world index sigma, (C/Cr)/(L/Lr).
+    **/
+    public double getSigma() {
+        return (clustering / getRandomClustering()) / (pathLength / getRandomPathLength());
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the small world index omega, Lr/L - C/Cl.
+    **/
+    public double getOmega() {
+        return (getRandomPathLength() / pathLength) - (clustering / getLatticeClustering());
+    }
+    
+    
+    
+    
+    
+    /**
+     * Gets the measurements as a line of text.
+    **/
+    public String toString() {
+        return "C = " + format(clustering) + ", L = " + format(pathLength) + 
+            ", sigma = " + format(getSigma()) + ", omega = " + format(getOmega());
+    }
+    
+    
+    
+    
+    
+    /**
+     * Rounds a number to three decimal places for display.
+    **/
+    private static String format(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) return String.valueOf(d);
+        return String.valueOf(Math.round(d * 1000.0) / 1000.0);
+    }
+    
+    
+// End of class.
+}
@@ -0,0 +1,193 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+
+/**
+ * A uniform grid over a set of points, for finding which are near a position.<P>
+ * Points are given as arrays of x and y, and are found again by their position 
+ * in those arrays. The bounding box of the points is cut into square cells, 
+ * and each cell's points are held together in one int array, sorted by cell 
+ * with a counting sort, so the index takes two ints per cell and one per point 
+ * however many there are. A search only looks in the cells that touch it, so 
+ * the time taken depends on how many points are near, not on how many there 
+ * are altogether.<P>
+ * Used by GUICanvas to find the agents under the mouse. The index isn't 
+ * updated if the points move; make a new one.<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+public class SpatialIndex {
+    
+    private static final int MAX_CELLS_PER_POINT = 4;  // Limit on the grid's size, so sparse points don't make a huge grid.
+    
+    private int [] xs = null;           // Point x positions.
+    private int [] ys = null;           // Point y positions.
+    private int minX = 0;               // Left of the grid.
+    private int minY = 0;               // Top of the grid.
+    private int cellSize = 1;           // Width and height of each cell.
+    private int columns = 1;            // Number of cells across.
+    private int rows = 1;               // Number of cells down.
+    private int [] cellStarts = null;   // Where each cell's points start in points; one more than the cells.
+    private int [] points = null;       // Point positions, cell by cell.
+    
+    
+    
+    
+    
+    /**
+     * Makes an index of the points (xs[i], ys[i]).
+     * cellSize is the width of each cell; a little more than the usual 
+     * search distance works well. Cells are made bigger if need be to 
+     * stop there being many more cells than points.
+    **/
+    public SpatialIndex(int [] xs, int [] ys, int cellSize) {
+        
+        if (cellSize < 1) throw new IllegalArgumentException("Cell size must be at least 1");
+        
+        this.xs = xs;
+        this.ys = ys;
+        int size = xs.length;
+        
+        // Find the bounding box.
+        
+        int maxX = 0;
+        int maxY = 0;
+        
+        if (size > 0) {
+            minX = Integer.MAX_VALUE;
+            minY = Integer.MAX_VALUE;
+            maxX = Integer.MIN_VALUE;
+            maxY = Integer.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (xs[i] < minX) minX = xs[i];
+                if (xs[i] > maxX) maxX = xs[i];
+                if (ys[i] < minY) minY = ys[i];
+                if (ys[i] > maxY) maxY = ys[i];
+            }
+        }
+        
+        // Size the grid, growing the cells if there'd be too many.
+        
+        long width = (long)maxX - minX + 1;
+        long height = (long)maxY - minY + 1;
+        long limit = Math.max((long)size * MAX_CELLS_PER_POINT, 1);
+        
+        long grown = cellSize;
+        while ((cells(width, height, grown) > limit) && (grown < Integer.MAX_VALUE)) grown = Math.min(grown * 2, Integer.MAX_VALUE);
+        
+        this.cellSize = (int)grown;
+        columns = (int)((width + this.cellSize - 1) / this.cellSize);
+        rows = (int)((height + this.cellSize - 1) / this.cellSize);
+        
+        // Count the points in each cell, turn the counts into starts, then drop the points in.
+        
+        cellStarts = new int[columns * rows + 1];
+        points = new int[size];
+        
+        for (int i = 0; i < size; i++) cellStarts[cell(xs[i], ys[i]) + 1]++;
+        for (int c = 0; c < columns * rows; c++) cellStarts[c + 1] = cellStarts[c + 1] + cellStarts[c];
+        
+        int [] filled = Arrays.copyOf(cellStarts, columns * rows);
+        for (int i = 0; i < size; i++) points[filled[cell(xs[i], ys[i])]++] = i;
+        
+    } // End of constructor.
+    
+    
+    
+    
+    
+    /**
+     * Gets the number of points indexed.
+    **/
+    public int size() {
+        return points.length;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Finds the points less than distance away from (x, y) in both 
+     * directions, i.e. inside the square with sides 2 * distance - 1 
+     * centered on it. Gives back their positions in the arrays, lowest first.
+    **/
+    public int [] find(int x, int y, int distance) {
+        
+        int [] found = new int[8];
+        int count = 0;
+        
+        if (points.length == 0) return new int[0];
+        
+        // Work out the cells the square touches, if any.
+        
+        long left = Math.max((long)x - distance + 1 - minX, 0);
+        long right = Math.min((long)x + distance - 1 - minX, (long)columns * cellSize - 1);
+        long top = Math.max((long)y - distance + 1 - minY, 0);
+        long bottom = Math.min((long)y + distance - 1 - minY, (long)rows * cellSize - 1);
+        
+        if ((left > right) || (top > bottom)) return new int[0];
+        
+        for (int row = (int)(top / cellSize); row <= (int)(bottom / cellSize); row++) {
+            for (int column = (int)(left / cellSize); column <= (int)(right / cellSize); column++) {
+                
+                int cell = row * columns + column;
+                
+                for (int j = cellStarts[cell]; j < cellStarts[cell + 1]; j++) {
+                    int point = points[j];
+                    if ((Math.abs((long)xs[point] - x) < distance) && (Math.abs((long)ys[point] - y) < distance)) {
+                        if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                        found[count++] = point;
+                    }
+                }
+                
+            }
+        }
+        
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+        
+    } // End of find.
+    
+    
+    
+    
+    
+    /**
+     * Finds the cell a point is in.
+    **/
+    private int cell(int x, int y) {
+        return (int)(((long)y - minY) / cellSize) * columns + (int)(((long)x - minX) / cellSize);
+    }
+    
+    
+    
+    
+    
+    /**
+     * Works out how many cells a grid would have.
+    **/
+    private static long cells(long width, long height, long cellSize) {
+        return ((width + cellSize - 1) / cellSize) * ((height + cellSize - 1) / cellSize);
+    }
+
+// End of class.
+}
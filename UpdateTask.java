@@ -0,0 +1,107 @@
+/**
+ * --Copyright notice-- 
+ *
+ * Copyright (c) School of Geography, University of Leeds. 
+ * http://www.geog.leeds.ac.uk/
+ * This software is licensed under 'The Artistic License' which can be found at 
+ * the Open Source Initiative website at... 
+ * http://www.opensource.org/licenses/artistic-license.php
+ * Please note that the optional Clause 8 does not apply to this code.
+ *
+ * The Standard Version source code, and associated documentation can be found at... 
+ * [online] http://mass.leeds.ac.uk/
+ * 
+ *
+ * --End of Copyright notice-- 
+ *
+ */
+
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs one half of a synchronous iteration over a range of agents, 
+ * splitting itself up to run on a ForkJoinPool.<P>
+ * An iteration is two passes: first every agent stores its value as its 
+ * previous value, then every agent updates. As updates only read the 
+ * previous values of other agents and only write their own, the agents 
+ * can be updated in any order, or at the same time, and give the same result.<P>
+ * Agents are handed out in fixed blocks, each with its own random number 
+ * stream, so the random numbers an agent gets don't depend on the threads either.<P>
+ * If the graph is recording changes, each block marks the agents whose 
+ * values changed as it goes (see AgentGraph.valuesChanged).<P>
+ * @author <A href="http://www.geog.leeds.ac.uk/people/a.evans/">Andy Evans</A>
+ * @version 0.1
+**/
+class UpdateTask extends RecursiveAction {
+    
+    static final int BLOCK = 1024;                 // Agents per random number stream; smallest range run.
+    
+    private AgentGraph graph = null;        // Agents to update, by id.
+    private int start = 0;                  // First agent id to do.
+    private int end = 0;                    // One past the last agent id to do.
+    private boolean store = false;          // If true, stores values, if false, updates.
+    private SplittableRandom [] streams = null;     // Random number stream for each block of agents.
+    
+    
+    /** 
+     * Creates a task for agents start to end - 1.
+     * If store is true the agents' values are stored, otherwise they are updated. 
+     * start must be at the start of a block.
+    **/
+    UpdateTask(AgentGraph graph, int start, int end, boolean store, SplittableRandom [] streams) {
+        this.graph = graph;
+        this.start = start;
+        this.end = end;
+        this.store = store;
+        this.streams = streams;
+    }
+    
+    
+    
+    
+    
+    /**
+     * Splits the range in two, on a block boundary, until it's one block, 
+     * then runs through it.
+    **/
+    protected void compute() {
+        
+        if (end - start > BLOCK) {
+            int blocks = (end - start + BLOCK - 1) / BLOCK;
+            int middle = start + (blocks / 2) * BLOCK;
+            invokeAll(new UpdateTask(graph, start, middle, store, streams), 
+                new UpdateTask(graph, middle, end, store, streams));
+            return;
+        }
+        
+        SplittableRandom random = streams[start / BLOCK];
+        
+        if (store) {
+            for (int i = start; i < end; i++) graph.getAgent(i).storeValue();
+            return;
+        }
+        
+        // Values were just stored, so those that changed are 
+        // those no longer the same as the previous value.
+        
+        boolean recording = graph.isRecordingChanges();
+        int [] changed = (recording) ? new int[end - start] : null;
+        int count = 0;
+        
+        for (int i = start; i < end; i++) {
+            Agent agent = graph.getAgent(i);
+            agent.update(random);
+            if (recording && (Double.doubleToRawLongBits(agent.getValue()) != Double.doubleToRawLongBits(agent.getPreviousValue()))) {
+                changed[count++] = i;
+            }
+        }
+        
+        if (count > 0) graph.valuesChanged(changed, count);
+        
+    }
+    
+    
+// End of class.
+}